@@ -0,0 +1,39 @@
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+
+/*
+ * 	Generic Order XML of a given size for the benchmarks, unindented as it comes from the outbox
+ */
+class BenchmarkOrders {
+	static final int smallOrderItems = 5;
+	static final int largeOrderItems = 5000;
+
+	/*
+	 * 	@Param	items	Number of OrderItem elements
+	 * 	@Return	Return Order XML with a poNumber and the given number of items
+	 */
+	static String orderXml(int items) {
+		StringBuilder sb = new StringBuilder(items * 400 + 512);
+		sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Order><orderHeader><poNumber>PO-BENCH-0001</poNumber>")
+			.append("<orderType>Standard</orderType><currency>USD</currency><buyer><partyRoleCode>Buyer</partyRoleCode>")
+			.append("<name>Benchmark Buyer Inc</name><address><addressLine1>1 Main Street</addressLine1><city>Springfield</city>")
+			.append("<countryCode>US</countryCode></address></buyer></orderHeader>");
+		for(int i = 0; i < items; i++) {
+			sb.append("<OrderItem><itemKey>").append(i + 1).append("</itemKey><baseItem><itemIdentifier><ShortDescription>Cotton shirt ")
+				.append(i).append("</ShortDescription><SKU>SKU-").append(100000 + i).append("</SKU></itemIdentifier><quantity>")
+				.append(10 + i % 90).append("</quantity><pricePerUnit>12.50</pricePerUnit></baseItem><requestedDeliveryDate>")
+				.append("2026-11-01</requestedDeliveryDate></OrderItem>");
+		}
+		sb.append("</Order>");
+		return sb.toString();
+	}
+
+	static Document orderDocument(int items) throws Exception {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		return factory.newDocumentBuilder().parse(new ByteArrayInputStream(orderXml(items).getBytes(StandardCharsets.UTF_8)));
+	}
+}
@@ -0,0 +1,55 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * 	Cost of pretty printing a downloaded order before it is written to disk
+ * 	prettyFormat is the String path used for small documents; streaming is the StAX path used once a
+ * 	document is streamed straight from the response to its file
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FormatBenchmark {
+	@Param({ "small", "large" })
+	public String order;
+
+	private String orderXml;
+	private byte[] orderBytes;
+
+	@Setup
+	public void setup() {
+		this.orderXml = BenchmarkOrders.orderXml(this.order.equals("large") ? BenchmarkOrders.largeOrderItems : BenchmarkOrders.smallOrderItems);
+		this.orderBytes = this.orderXml.getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public String prettyFormat() {
+		return Common.prettyFormat(this.orderXml);
+	}
+
+	@Benchmark
+	public int prettyFormatStreaming() throws XMLStreamException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(this.orderBytes.length * 2);
+		XmlFormatter.prettyFormat(new ByteArrayInputStream(this.orderBytes), out);
+		return out.size();
+	}
+}
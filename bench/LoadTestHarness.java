@@ -0,0 +1,169 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+import org.w3c.dom.Document;
+
+import infor.api.integration.InforAPI;
+import infor.api.integration.InforAPIClient;
+import infor.api.integration.InforAPIDefinition;
+import infor.api.integration.IntegrationMetrics;
+import infor.api.integration.IntegrationMetrics.Endpoint;
+import infor.api.integration.IntegrationMetrics.EndpointMetricsMBean;
+import infor.api.integration.Log;
+
+/*
+ * 	End to end load test of the real downloader and uploader against a MockIntegrationServer
+ *
+ * 	The download phase drains an outbox of loadTestDocuments documents with deleteOnDownload, running the
+ * 	downloader again while any are left as its poll loop would. The upload phase uploads loadTestDocuments
+ * 	generic orders and waits, as the uploader does, for every message to read Completed - so its rate
+ * 	includes the status polling. It first uploads a few files with a capital sigma at the signer's buffer
+ * 	boundary, which the mock rejects unless the file signature matches the String one
+ * 	Each phase reports documents/s and the client side latency percentiles of the endpoints it used, from
+ * 	IntegrationMetrics
+ *
+ * 	Reads an optional property file holding any of the tools' api properties (maxConcurrentSessions,
+ * 	useVirtualThreads, uploadContentEncoding ...), the downloader's deleteConcurrency and deleteBatchSize,
+ * 	the MockIntegrationServer mock* properties, and:
+ * 		loadTestDocuments		documents per phase, default 1000
+ * 		loadTestPhases			download, upload or both (default), comma separated
+ * 		loadTestOrderItems		OrderItems in each uploaded order, default 5
+ * 		streamFetchedDocuments	download phase streams documents to disk, default true
+ * 	logLevel defaults to WARN so the tools' own output does not slow the run down
+ */
+public class LoadTestHarness {
+	static final int maxDownloadPasses = 10;
+	//Files uploaded by the sigma boundary check - a sigma on each of the 8 chars around the boundary, before
+	//a letter and before markup, plus the long run
+	static final int sigmaBoundaryFiles = 17;
+
+	public static void main(String args[]) throws Exception {
+		Properties props = args.length > 0 ? Common.loadPropertyFile(args[0]) : new Properties();
+		for(String key : new String[] { "datakey", "accessKey", "user", "secret" }) {
+			props.putIfAbsent(key, "load-test-" + key);
+		}
+		int documents = Integer.parseInt(props.getProperty("loadTestDocuments", "1000"));
+		String phases = props.getProperty("loadTestPhases", "download,upload");
+		props.putIfAbsent("mockOutboxSize", phases.contains("download") ? String.valueOf(documents) : "0");
+		props.putIfAbsent("logLevel", "WARN");
+
+		MockIntegrationServer mock = new MockIntegrationServer(props);
+		mock.start();
+		props.setProperty("host", mock.getHost());
+		InforAPIDefinition apiDef = new InforAPIDefinition(props);
+		InforAPI.setApiDefinition(apiDef);
+		System.out.println("Load test against " + mock.getHost() + " - " + documents + " documents, " + apiDef.getSessionCapacity() + " sessions");
+
+		try {
+			if(phases.contains("download")) {
+				long start = System.nanoTime();
+				int downloaded = runDownloadPhase(props, mock, apiDef);
+				report("download", downloaded, System.nanoTime() - start, Endpoint.LIST, Endpoint.FETCH, Endpoint.DELETE);
+			}
+			if(phases.contains("upload")) {
+				System.out.println("sigma boundary check: " + runSigmaBoundaryCheck(mock) + " of " + sigmaBoundaryFiles + " files accepted");
+				long start = System.nanoTime();
+				int uploaded = runUploadPhase(props, mock, apiDef, documents);
+				report("upload", uploaded, System.nanoTime() - start, Endpoint.UPLOAD, Endpoint.STATUS);
+			}
+		} finally {
+			mock.stop();
+		}
+		System.out.println(mock.summary());
+		System.exit(mock.getAuthFailures() == 0 ? 0 : 1);
+	}
+
+	/*
+	 * 	@Return	Return number of documents written to disk
+	 */
+	static int runDownloadPhase(Properties props, MockIntegrationServer mock, InforAPIDefinition apiDef) throws IOException {
+		Path folder = Files.createTempDirectory("load-test-outbox");
+		boolean stream = Boolean.parseBoolean(props.getProperty(IntegrationApiDownloader.streamFetchPropKey, "true"));
+		try {
+			DownloadJournal journal = IntegrationApiDownloader.openJournal(props, folder.toString());
+			InforAPIClient client = InforAPI.getDefaultClient();
+			DeleteStage deleteStage = IntegrationApiDownloader.openDeleteStage(props, true, client, journal);
+			for(int pass = 0; pass < maxDownloadPasses && mock.getOutboxSize() > 0; pass++) {
+				IntegrationApiDownloader.runIntegrationApiDownloader(true, stream, XmlFormatter.Format.RAW, folder.toString(), journal, deleteStage, client);
+			}
+			IntegrationApiDownloader.closeDeleteStage(deleteStage);
+			if(journal != null) {
+				journal.close();
+			}
+			int written = 0;
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(folder, "*.xml")) {
+				for(Path file : files) {
+					written++;
+				}
+			}
+			return written;
+		} finally {
+			try (Stream<Path> files = Files.walk(folder)) {
+				files.sorted(Comparator.reverseOrder()).forEach((file) -> file.toFile().delete());
+			}
+		}
+	}
+
+	/*
+	 * 	@Return	Return number of documents the mock server accepted
+	 */
+	static int runUploadPhase(Properties props, MockIntegrationServer mock, InforAPIDefinition apiDef, int documents) throws Exception {
+		Properties uploaderProps = new Properties();
+		uploaderProps.setProperty(IntegrationApiUploader.docType, "OrderDetail");
+		Document order = BenchmarkOrders.orderDocument(Integer.parseInt(props.getProperty("loadTestOrderItems", "5")));
+		//Greek words ending in a capital sigma, which lowercases to the final form - the mock checks every
+		//signature against its own reference, so a signer that lowercases them differently fails the run
+		order.getElementsByTagName("name").item(0).setTextContent("\u039f\u0394\u039f\u03a3 \u0395\u03a1\u039c\u039f\u03a5 Benchmark Buyer \u039b\u039f\u0393\u039f\u03a3");
+		GenericOrderTemplate orders = new GenericOrderTemplate(order, order.getElementsByTagName("poNumber").item(0), documents);
+		int before = mock.getUploadCount();
+		IntegrationApiUploader.uploadXMLToIntegrationAPI(uploaderProps, orders, apiDef);
+		return mock.getUploadCount() - before;
+	}
+
+	/*
+	 * 	Upload from disk documents whose capital sigma falls either side of the signer's 8192 char buffer boundary,
+	 * 	in a run with no whitespace as minified XML has, plus one run longer than two buffers
+	 * 	@Return	Return number of documents the mock server accepted
+	 */
+	static int runSigmaBoundaryCheck(MockIntegrationServer mock) throws IOException {
+		Path folder = Files.createTempDirectory("load-test-sigma");
+		try {
+			List<Path> files = new ArrayList<Path>();
+			for(int i = 0; i < sigmaBoundaryFiles; i++) {
+				int run = i < sigmaBoundaryFiles - 1 ? 8192 - 3 - 4 + i / 2 : 20000;
+				Path file = folder.resolve("sigma-" + i + ".xml");
+				Files.writeString(file, "<x>" + "A".repeat(run) + "\u03a3" + (i % 2 == 0 ? "B</x>" : "</x>"));
+				files.add(file);
+			}
+			Properties uploaderProps = new Properties();
+			uploaderProps.setProperty(IntegrationApiUploader.docType, "OrderDetail");
+			int before = mock.getUploadCount();
+			IntegrationApiUploader.uploadXMLToIntegrationAPI(uploaderProps, files.iterator(), InforAPI.getDefaultClient());
+			return mock.getUploadCount() - before;
+		} finally {
+			try (Stream<Path> files = Files.walk(folder)) {
+				files.sorted(Comparator.reverseOrder()).forEach((file) -> file.toFile().delete());
+			}
+		}
+	}
+
+	private static void report(String phase, int documents, long nanos, Endpoint... endpoints) {
+		//Keep the report together rather than interleaved with log lines still being written
+		Log.flush(1000);
+		double seconds = nanos / 1e9;
+		System.out.println(String.format("%s: %d documents in %.2fs - %.1f documents/s", phase, documents, seconds, documents / seconds));
+		for(Endpoint endpoint : endpoints) {
+			EndpointMetricsMBean metrics = IntegrationMetrics.getEndpointMetrics(endpoint);
+			System.out.println(String.format("  %-7s requests=%d errors=%d retries=%d p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms",
+					endpoint.name().toLowerCase(), metrics.getRequestCount(), metrics.getErrorCount(), metrics.getRetryCount(),
+					metrics.getP50LatencyMillis(), metrics.getP95LatencyMillis(), metrics.getP99LatencyMillis(), metrics.getMaxLatencyMillis()));
+		}
+	}
+}
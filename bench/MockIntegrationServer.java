@@ -0,0 +1,420 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import infor.api.integration.ContentEncoding;
+
+/*
+ * 	Local stand-in for the /rest/3.1/integration endpoints, for measuring the tools without a tenant
+ *
+ * 	Every request must carry the datakey and an HMAC Authorization header signed with the configured
+ * 	secret, checked the way the platform checks it - an unsigned or wrongly signed request gets a 401
+ * 	The check computes the signature independently of the tools' HmacSigner, the way the tools signed
+ * 	requests originally, so a change to the signer that alters a signature fails here rather than passing
+ * 	by construction; a compressed body is decoded with java.util.zip, not the tools' ContentEncoding
+ * 	The outbox is a synthetic list of documents of a fixed size that shrinks as they are deleted; uploads
+ * 	are given a message id whose status reads Completed after a set number of status polls
+ * 	Latency, throttling (429 with Retry-After) and errors (503) are injected into any endpoint, after the
+ * 	signature check, so retries and backoff are exercised as they would be against the platform
+ *
+ * 	Configured from the same properties as the tools - datakey, accessKey, user and secret - plus:
+ * 		mockPort					port to listen on, 0 for any free port
+ * 		mockOutboxSize				documents in the outbox at start
+ * 		mockDocumentBytes			approximate size of each outbox document
+ * 		mockPageSize				results per outbox/list page
+ * 		mockLatencyMillis			added to every response
+ * 		mockLatencyJitterMillis		up to this much more, uniformly distributed
+ * 		mockThrottleRate			fraction of requests answered 429
+ * 		mockRetryAfterSeconds		Retry-After sent with a 429
+ * 		mockErrorRate				fraction of requests answered 503
+ * 		mockStatusPollsToComplete	status polls before an upload reads Completed
+ * 		mockCompressResponses		gzip responses to clients that accept it
+ */
+public class MockIntegrationServer {
+	static final String apiPath = "/rest/3.1/integration";
+
+	private final String datakey;
+	private final String accessKey;
+	private final String user;
+	private final SecretKeySpec secretKey;
+	private final int port;
+	private final int pageSize;
+	private final long latencyMillis;
+	private final long latencyJitterMillis;
+	private final double throttleRate;
+	private final int retryAfterSeconds;
+	private final double errorRate;
+	private final int statusPollsToComplete;
+	private final boolean compressResponses;
+	private final byte[] document;
+
+	//actionUid -> messageUid of each document in the outbox
+	private final ConcurrentSkipListMap<Integer, Integer> outbox = new ConcurrentSkipListMap<Integer, Integer>();
+	private final AtomicInteger nextActionUid = new AtomicInteger(1);
+	//messageId of each upload -> status polls so far
+	private final Map<Integer, AtomicInteger> uploads = new ConcurrentHashMap<Integer, AtomicInteger>();
+	private final AtomicInteger nextMessageId = new AtomicInteger(700000000);
+
+	private final Map<String, LongAdder> requestCounts = new ConcurrentHashMap<String, LongAdder>();
+	private final LongAdder authFailures = new LongAdder();
+	private final LongAdder throttled = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+
+	private HttpServer server;
+	private ExecutorService executor;
+
+	public MockIntegrationServer(Properties props) {
+		this.datakey = props.getProperty("datakey");
+		this.accessKey = props.getProperty("accessKey");
+		this.user = props.getProperty("user");
+		this.secretKey = new SecretKeySpec(props.getProperty("secret").getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+		this.port = Integer.parseInt(props.getProperty("mockPort", "0"));
+		this.pageSize = Integer.parseInt(props.getProperty("mockPageSize", "100"));
+		this.latencyMillis = Long.parseLong(props.getProperty("mockLatencyMillis", "0"));
+		this.latencyJitterMillis = Long.parseLong(props.getProperty("mockLatencyJitterMillis", "0"));
+		this.throttleRate = Double.parseDouble(props.getProperty("mockThrottleRate", "0"));
+		this.retryAfterSeconds = Integer.parseInt(props.getProperty("mockRetryAfterSeconds", "1"));
+		this.errorRate = Double.parseDouble(props.getProperty("mockErrorRate", "0"));
+		this.statusPollsToComplete = Integer.parseInt(props.getProperty("mockStatusPollsToComplete", "1"));
+		this.compressResponses = Boolean.parseBoolean(props.getProperty("mockCompressResponses", "true"));
+		this.document = buildDocument(Integer.parseInt(props.getProperty("mockDocumentBytes", "4096")));
+		addOutboxDocuments(Integer.parseInt(props.getProperty("mockOutboxSize", "0")));
+	}
+
+	/*
+	 * 	Run the server until the process is stopped
+	 * 	@Param	args	optional property file; defaults to the tools' config.properties
+	 */
+	public static void main(String args[]) throws IOException, InterruptedException {
+		Properties props = args.length > 0 ? Common.loadPropertyFile(args[0]) : Common.loadApiDefPropertyFile();
+		MockIntegrationServer mock = new MockIntegrationServer(props);
+		mock.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			mock.stop();
+			System.out.println(mock.summary());
+		}));
+		System.out.println("Mock Integration API listening on " + mock.getHost() + " with " + mock.getOutboxSize() + " outbox documents");
+		new CountDownLatch(1).await();
+	}
+
+	public void start() throws IOException {
+		this.server = HttpServer.create(new InetSocketAddress(this.port), 0);
+		this.executor = Executors.newCachedThreadPool((runnable) -> {
+			Thread thread = new Thread(runnable, "mock-integration-api");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.server.setExecutor(this.executor);
+		this.server.createContext(apiPath, this::handle);
+		this.server.start();
+	}
+
+	public void stop() {
+		this.server.stop(0);
+		this.executor.shutdownNow();
+	}
+
+	/*
+	 * 	@Return	Return value for the tools' host property, e.g. http://localhost:43121
+	 */
+	public String getHost() {
+		return "http://localhost:" + this.server.getAddress().getPort();
+	}
+
+	/*
+	 * 	Put more synthetic documents in the outbox
+	 */
+	public void addOutboxDocuments(int count) {
+		for(int i = 0; i < count; i++) {
+			int actionUid = this.nextActionUid.getAndIncrement();
+			this.outbox.put(actionUid, 100000000 + actionUid);
+		}
+	}
+
+	public int getOutboxSize() {
+		return this.outbox.size();
+	}
+
+	public int getUploadCount() {
+		return this.uploads.size();
+	}
+
+	/*
+	 * 	@Param	endpoint	list, fetch, delete, upload or status
+	 * 	@Return	Return requests received by an endpoint, including those failed by injection
+	 */
+	public long getRequestCount(String endpoint) {
+		LongAdder count = this.requestCounts.get(endpoint);
+		return count != null ? count.sum() : 0;
+	}
+
+	public long getAuthFailures() {
+		return this.authFailures.sum();
+	}
+
+	public String summary() {
+		StringBuilder sb = new StringBuilder("Mock server requests -");
+		for(String endpoint : new String[] { "list", "fetch", "delete", "upload", "status", "other" }) {
+			sb.append(' ').append(endpoint).append('=').append(getRequestCount(endpoint));
+		}
+		sb.append(", throttled=").append(this.throttled.sum()).append(", errors=").append(this.errors.sum())
+			.append(", authFailures=").append(getAuthFailures()).append(", outbox=").append(getOutboxSize())
+			.append(", uploads=").append(getUploadCount());
+		return sb.toString();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			String path = exchange.getRequestURI().getRawPath().substring(apiPath.length());
+			String endpoint = endpointOf(path);
+			this.requestCounts.computeIfAbsent(endpoint, (e) -> new LongAdder()).increment();
+			byte[] body = readBody(exchange);
+			injectLatency();
+			if(! isSignatureValid(exchange, body)) {
+				this.authFailures.increment();
+				respond(exchange, 401, "text/plain", "Invalid HMAC authorization");
+				return;
+			}
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			if(this.throttleRate > 0 && random.nextDouble() < this.throttleRate) {
+				this.throttled.increment();
+				exchange.getResponseHeaders().set("Retry-After", String.valueOf(this.retryAfterSeconds));
+				respond(exchange, 429, "text/plain", "Too many requests");
+				return;
+			}
+			if(this.errorRate > 0 && random.nextDouble() < this.errorRate) {
+				this.errors.increment();
+				respond(exchange, 503, "text/plain", "Service unavailable");
+				return;
+			}
+			switch(endpoint) {
+				case "list":	list(exchange); break;
+				case "fetch":	fetch(exchange, lastSegment(path)); break;
+				case "delete":	delete(exchange, lastSegment(path)); break;
+				case "upload":	upload(exchange); break;
+				case "status":	status(exchange, lastSegment(path)); break;
+				default:		respond(exchange, 404, "text/plain", "Unknown resource " + path);
+			}
+		} catch (RuntimeException e) {
+			respond(exchange, 500, "text/plain", e.toString());
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void list(HttpExchange exchange) throws IOException {
+		int offset = 0;
+		String query = exchange.getRequestURI().getRawQuery();
+		if(query != null && query.startsWith("offset=")) {
+			offset = Integer.parseInt(query.substring("offset=".length()));
+		}
+		StringBuilder results = new StringBuilder();
+		int count = 0;
+		int size = this.outbox.size();
+		Iterator<Map.Entry<Integer, Integer>> entries = this.outbox.entrySet().iterator();
+		for(int skipped = 0; skipped < offset && entries.hasNext(); skipped++) {
+			entries.next();
+		}
+		while(count < this.pageSize && entries.hasNext()) {
+			Map.Entry<Integer, Integer> entry = entries.next();
+			results.append("<result><messageUid>").append(entry.getValue()).append("</messageUid><documentType>OrderDetail</documentType>")
+				.append("<messagePriority>Normal</messagePriority><actionUid>").append(entry.getKey()).append("</actionUid></result>");
+			count++;
+		}
+		String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><QueryResult><resultInfo><count>" + count + "</count><offset>" + offset
+				+ "</offset><firstRowNumber>" + (offset + 1) + "</firstRowNumber><estimatedTotalCount>" + size
+				+ "</estimatedTotalCount><hasMore>" + (offset + count < size) + "</hasMore></resultInfo>" + results + "</QueryResult>";
+		respond(exchange, 200, "application/xml", xml);
+	}
+
+	private void fetch(HttpExchange exchange, Integer actionUid) throws IOException {
+		if(actionUid == null || ! this.outbox.containsKey(actionUid)) {
+			respond(exchange, 404, "text/plain", "No outbox document " + actionUid);
+			return;
+		}
+		respond(exchange, 200, "application/xml", this.document);
+	}
+
+	private void delete(HttpExchange exchange, Integer actionUid) throws IOException {
+		if(actionUid == null || this.outbox.remove(actionUid) == null) {
+			respond(exchange, 404, "text/plain", "No outbox document " + actionUid);
+			return;
+		}
+		respond(exchange, 202, "text/plain", "Deleted " + actionUid);
+	}
+
+	private void upload(HttpExchange exchange) throws IOException {
+		int messageId = this.nextMessageId.getAndIncrement();
+		this.uploads.put(messageId, new AtomicInteger());
+		respond(exchange, 200, "application/json", "[{\"messageId\":" + messageId + "}]");
+	}
+
+	private void status(HttpExchange exchange, Integer messageId) throws IOException {
+		AtomicInteger polls = messageId != null ? this.uploads.get(messageId) : null;
+		if(polls == null) {
+			respond(exchange, 404, "text/plain", "No message " + messageId);
+			return;
+		}
+		String state = polls.incrementAndGet() >= this.statusPollsToComplete ? "Completed" : "Processing";
+		respond(exchange, 200, "application/json", "{\"messageId\":" + messageId + ",\"state\":\"" + state + "\",\"stateActionType\":\"Create\"}");
+	}
+
+	/*
+	 * 	Check the request is signed the way the platform checks it: datakey, access key and user as
+	 * 	configured, and a signature over the x-dapi-date, method, pathInfo and any payload that matches one
+	 * 	computed with the secret
+	 */
+	private boolean isSignatureValid(HttpExchange exchange, byte[] body) {
+		Headers headers = exchange.getRequestHeaders();
+		String authorization = headers.getFirst("Authorization");
+		String xDapiDate = headers.getFirst("x-dapi-date");
+		if(authorization == null || xDapiDate == null || ! authorization.startsWith("HMAC_1 ")
+				|| ! String.valueOf(this.datakey).equals(headers.getFirst("datakey"))) {
+			return false;
+		}
+		String[] parts = authorization.substring("HMAC_1 ".length()).split(":");
+		if(parts.length != 3 || ! parts[0].equals(this.accessKey) || ! parts[2].equals(this.user)) {
+			return false;
+		}
+		String query = exchange.getRequestURI().getRawQuery();
+		String pathInfo = exchange.getRequestURI().getRawPath() + (query != null ? "?" + query : "");
+		String payload = body.length > 0 ? new String(body, StandardCharsets.UTF_8) : null;
+		String expected = referenceSignature(pathInfo, exchange.getRequestMethod(), xDapiDate, payload);
+		return MessageDigest.isEqual(expected.getBytes(StandardCharsets.US_ASCII), parts[1].getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/*
+	 * 	Signature as the tools computed it before HmacSigner: the canonical header values - date, method and
+	 * 	pathInfo, in header name order - then any POST payload, concatenated and lowercased as whole Strings,
+	 * 	with one HMAC over the UTF-8 bytes
+	 */
+	private String referenceSignature(String pathInfo, String method, String xDapiDate, String payload) {
+		String signingBase = xDapiDate.toLowerCase() + method.toLowerCase() + pathInfo.toLowerCase();
+		if(method.toUpperCase().equals("POST") && payload != null) {
+			signingBase += payload.toLowerCase();
+		}
+		try {
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(this.secretKey);
+			return Base64.getEncoder().encodeToString(mac.doFinal(signingBase.getBytes(StandardCharsets.UTF_8)));
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("Cannot compute HmacSHA256", e);
+		}
+	}
+
+	private void injectLatency() {
+		long delay = this.latencyMillis;
+		if(this.latencyJitterMillis > 0) {
+			delay += ThreadLocalRandom.current().nextLong(this.latencyJitterMillis + 1);
+		}
+		if(delay > 0) {
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/*
+	 * 	@Return	Return the request body, decoded if it was sent compressed
+	 */
+	private static byte[] readBody(HttpExchange exchange) throws IOException {
+		String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+		InputStream body = exchange.getRequestBody();
+		if("gzip".equalsIgnoreCase(encoding)) {
+			body = new GZIPInputStream(body);
+		} else if("deflate".equalsIgnoreCase(encoding)) {
+			body = new InflaterInputStream(body);
+		}
+		try (InputStream in = body) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			in.transferTo(out);
+			return out.toByteArray();
+		}
+	}
+
+	private void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+		respond(exchange, status, contentType, body.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+		if(this.compressResponses && acceptEncoding != null && acceptEncoding.contains(ContentEncoding.GZIP)) {
+			exchange.getResponseHeaders().set("Content-Encoding", ContentEncoding.GZIP);
+			exchange.sendResponseHeaders(status, 0);
+			try (OutputStream out = new GZIPOutputStream(exchange.getResponseBody())) {
+				out.write(body);
+			}
+		} else {
+			exchange.sendResponseHeaders(status, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		}
+	}
+
+	private static String endpointOf(String path) {
+		if(path.equals("/outbox/list")) {
+			return "list";
+		} else if(path.startsWith("/outbox/fetch/")) {
+			return "fetch";
+		} else if(path.startsWith("/outbox/delete/")) {
+			return "delete";
+		} else if(path.equals("/inbound/upload")) {
+			return "upload";
+		} else if(path.startsWith("/inbound/status/")) {
+			return "status";
+		}
+		return "other";
+	}
+
+	private static Integer lastSegment(String path) {
+		try {
+			return Integer.valueOf(path.substring(path.lastIndexOf('/') + 1));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/*
+	 * 	@Return	Return an Order document of about the given size, UTF-8 encoded
+	 */
+	private static byte[] buildDocument(int bytes) {
+		StringBuilder sb = new StringBuilder(bytes + 512);
+		sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Order><orderHeader><poNumber>PO-MOCK-0001</poNumber></orderHeader>");
+		for(int i = 1; sb.length() < bytes; i++) {
+			sb.append("<OrderItem><itemKey>").append(i).append("</itemKey><baseItem><SKU>SKU-").append(100000 + i)
+				.append("</SKU><quantity>").append(10 + i % 90).append("</quantity></baseItem></OrderItem>");
+		}
+		return sb.append("</Order>").toString().getBytes(StandardCharsets.UTF_8);
+	}
+}
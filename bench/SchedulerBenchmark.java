@@ -0,0 +1,42 @@
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * 	Scheduling overhead of the sliding window in Common.executeCallableRequestsConcurrently
+ * 	The work function does nothing, so each op is the cost of binding, submitting, completing and
+ * 	refilling one work item - the pool start up and shut down is spread over the batch
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SchedulerBenchmark {
+	static final int workItems = 10000;
+	static final ExecuteFunctionalInterface noOp = (objs) -> "";
+
+	@Param({ "5", "50" })
+	public int threadNum;
+
+	@Benchmark
+	@OperationsPerInvocation(workItems)
+	public void slidingWindow() throws InterruptedException, ExecutionException {
+		Iterator<Object> items = Collections.nCopies(workItems, (Object) "").iterator();
+		Common.executeCallableRequestsConcurrently(noOp, items, this.threadNum, (s) -> {});
+	}
+}
@@ -0,0 +1,66 @@
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/*
+ * 	Cost of producing one upload payload from a generic order
+ * 	cloneAndSerialize is what copyAndIncrementOrderXML plus getStringFromDoc cost per order before
+ * 	GenericOrderTemplate replaced them, kept as the baseline; templateNext is the per order cost now
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UploaderBenchmark {
+	@Param({ "small", "large" })
+	public String order;
+
+	private Document orderDoc;
+	private GenericOrderTemplate template;
+	private int sequence;
+
+	@Setup
+	public void setup() throws Exception {
+		this.orderDoc = BenchmarkOrders.orderDocument(this.order.equals("large") ? BenchmarkOrders.largeOrderItems : BenchmarkOrders.smallOrderItems);
+		this.template = new GenericOrderTemplate(this.orderDoc, poNumberNode(this.orderDoc), Integer.MAX_VALUE);
+	}
+
+	@Benchmark
+	public String getStringFromDoc() {
+		return IntegrationApiUploader.getStringFromDoc(this.orderDoc);
+	}
+
+	@Benchmark
+	public String cloneAndSerialize() {
+		Document copy = (Document) this.orderDoc.cloneNode(true);
+		Node poNode = poNumberNode(copy);
+		poNode.setTextContent(poNode.getTextContent() + "-XXX" + this.sequence++);
+		return IntegrationApiUploader.getStringFromDoc(copy);
+	}
+
+	@Benchmark
+	public String templateNext() {
+		if(! this.template.hasNext()) {
+			this.template = new GenericOrderTemplate(this.orderDoc, poNumberNode(this.orderDoc), Integer.MAX_VALUE);
+		}
+		return this.template.next();
+	}
+
+	private static Node poNumberNode(Document doc) {
+		return doc.getElementsByTagName("poNumber").item(0);
+	}
+}
@@ -0,0 +1,69 @@
+package infor.api.integration;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import infor.api.resources.IntegrationQueryResult;
+
+/*
+ * 	Cost of turning an outbox/list response into IntegrationQueryResultNodes
+ * 	bindOutboxListXmlToObject is the JAXB unmarshal of the whole response; streamingReader is the
+ * 	OutboxListReader the downloader uses by default, drained to the end
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OutboxListBenchmark {
+	@Param({ "10", "1000", "50000" })
+	public int entries;
+
+	private byte[] response;
+
+	@Setup
+	public void setup() {
+		StringBuilder sb = new StringBuilder(this.entries * 160 + 256);
+		sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?><QueryResult><resultInfo><count>").append(this.entries)
+			.append("</count><offset>0</offset><firstRowNumber>1</firstRowNumber><estimatedTotalCount>").append(this.entries)
+			.append("</estimatedTotalCount><hasMore>false</hasMore></resultInfo>");
+		for(int i = 0; i < this.entries; i++) {
+			sb.append("<result><messageUid>").append(100000000 + i).append("</messageUid><documentType>OrderDetail</documentType>")
+				.append("<messagePriority>Normal</messagePriority><actionUid>").append(200000000 + i).append("</actionUid></result>");
+		}
+		sb.append("</QueryResult>");
+		this.response = sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public IntegrationQueryResult bindOutboxListXmlToObject() {
+		return InforAPI.bindOutboxListXmlToObject(new ByteArrayInputStream(this.response));
+	}
+
+	@Benchmark
+	public int streamingReader(Blackhole bh) throws IOException {
+		int read = 0;
+		try (OutboxListReader reader = new OutboxListReader(new ByteArrayInputStream(this.response), false)) {
+			while(reader.hasNext()) {
+				bh.consume(reader.next());
+				read++;
+			}
+		}
+		return read;
+	}
+}
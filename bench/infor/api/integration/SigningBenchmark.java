@@ -0,0 +1,92 @@
+package infor.api.integration;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * 	Cost of authenticating one request: the HMAC signature over the canonical headers and, for a POST,
+ * 	the payload - plus the x-dapi-date header computed for every attempt
+ * 	createSignature and canonalizeHeaders on InforAPI became HmacSigner.sign and updateCanonicalHeaders
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SigningBenchmark {
+	static final String uri = "https://network.infornexus.com/rest/3.1/integration/outbox/fetch/123456789";
+	static final String uploadUri = "https://network.infornexus.com/rest/3.1/integration/inbound/upload?docType='OrderDetail'";
+
+	//Payload size in chars for the POST benchmarks
+	@Param({ "1024", "65536", "1048576" })
+	public int payloadChars;
+
+	private HmacSigner signer;
+	private String xDapiDate;
+	private String payload;
+	private Path payloadFile;
+
+	@Setup
+	public void setup() throws IOException {
+		this.signer = new HmacSigner("0123456789abcdef0123456789abcdef");
+		this.xDapiDate = HmacSigner.computeXDapiDate();
+		StringBuilder sb = new StringBuilder(this.payloadChars);
+		String line = "<OrderItem><itemKey>ABC-123</itemKey><Description>Gr\u00f6\u00dfe XL \u00c9t\u00e9</Description></OrderItem>\n";
+		while(sb.length() < this.payloadChars) {
+			sb.append(line, 0, Math.min(line.length(), this.payloadChars - sb.length()));
+		}
+		this.payload = sb.toString();
+		this.payloadFile = Files.createTempFile("signing-benchmark", ".xml");
+		Files.write(this.payloadFile, this.payload.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(this.payloadFile);
+	}
+
+	@Benchmark
+	public String signGet() {
+		return this.signer.sign(uri, "GET", this.xDapiDate, (String) null);
+	}
+
+	@Benchmark
+	public String signPost() {
+		return this.signer.sign(uploadUri, "POST", this.xDapiDate, this.payload);
+	}
+
+	@Benchmark
+	public String signPostFromFile() throws IOException {
+		return this.signer.sign(uploadUri, "POST", this.xDapiDate, this.payloadFile);
+	}
+
+	@Benchmark
+	public String canonicalHeaders() {
+		HmacSigner.SigningState state = this.signer.takeState();
+		this.signer.updateCanonicalHeaders(state, uri, "GET", this.xDapiDate);
+		String signature = state.finish();
+		this.signer.returnState(state);
+		return signature;
+	}
+
+	@Benchmark
+	public String computeXDapiDate() {
+		return HmacSigner.computeXDapiDate();
+	}
+}
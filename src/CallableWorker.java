@@ -1,6 +1,6 @@
 import java.util.concurrent.Callable;
 
-public class CallableWorker implements Callable{
+public class CallableWorker implements Callable<String>{
 	
 	protected Object [] params;
 	Object [] myObjects = new Object[0];
@@ -2,28 +2,38 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.StringReader;
-import java.io.StringWriter;
-import java.util.ArrayList;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Source;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.stream.StreamResult;
-import javax.xml.transform.stream.StreamSource;
+import infor.api.integration.InforAPIDefinition;
+import infor.api.integration.IntegrationMetrics;
+import infor.api.integration.Log;
 
 /*
  * 	Common static functions used by the integrationApiUploader and the integrationApiDownloader
  */
 public class Common {
 	static final String apiDefPropertyFileName = "config.properties";
+	static final int transferBufferSize = 64 * 1024;
+	//Direct buffers are expensive to allocate - keep the ones in use by streamToFile for reuse
+	private static final ConcurrentLinkedQueue<ByteBuffer> transferBuffers = new ConcurrentLinkedQueue<ByteBuffer>();
 	
 	static Properties loadApiDefPropertyFile() {
 		return loadPropertyFile(apiDefPropertyFileName);
@@ -54,34 +64,78 @@ public class Common {
 	}
 	/*
 	 *	Execute a set of functions in multi-threads concurrently
-	 *	Loop through the list and bind each list item to the passed in function
-	 *	Then execute each function in a number of threads concurrently - keep looping through the set
+	 *	Bind each list item to the passed in function and keep exactly threadNum of them in flight;
+	 *	as soon as any one of them finishes, the next list item is bound and submitted in its place
 	 *	until the function workerFunction has been executed N times where N is the size of the iterList
 	 *
 	 * 	@Param	workerFunction	Annonymous function to be executed in the Executor thread pool
 	 * 	@Param	iterList		Iterate through the list, bind each item to workerFunction before they 
 	 * 							are executed in threadPool
+	 * 	@Param	threadNum		Number of requests kept in flight at any one time
+	 * 	@Param	onComplete		Called with each worker's return value in order of completion
 	 */
-	public static void executeCallableRequestsConcurrently(ExecuteFunctionalInterface workerFunction, List<?> iterList, int threadNum) throws InterruptedException, ExecutionException {
-		ExecutorService pool = Executors.newFixedThreadPool(threadNum);
-		ArrayList<CallableWorker> callables;
-		int startIndx = 0;
-		int iterX = 0;
-		while( (callables = getNextPoolForExec(startIndx, threadNum, iterList, workerFunction) ).size() != 0 ) {
-			ArrayList<Future> theseFutures = new ArrayList<Future>();
-			for(int k = 0; k < callables.size(); k++) {
-				Future f = pool.submit( callables.get(k) );
-				theseFutures.add(f);
+	public static void executeCallableRequestsConcurrently(ExecuteFunctionalInterface workerFunction, Iterator<?> iterList, int threadNum, Consumer<String> onComplete) throws InterruptedException, ExecutionException {
+		executeCallableRequestsConcurrently(workerFunction, iterList, threadNum, Executors.newFixedThreadPool(threadNum), onComplete);
+	}
+	
+	/*
+	 * 	Same as above - but size the pool from the api definition. With useVirtualThreads each work item
+	 * 	runs on its own virtual thread and up to maxConcurrentWorkItems are kept in flight; the number of
+	 * 	open HTTP sessions is still capped at maxConcurrentSessions by InforAPI. With adaptiveConcurrency
+	 * 	the pool is sized to the session ceiling and InforAPI decides how many of them may send at once
+	 */
+	public static void executeCallableRequestsConcurrently(ExecuteFunctionalInterface workerFunction, Iterator<?> iterList, InforAPIDefinition apiDef, Consumer<String> onComplete) throws InterruptedException, ExecutionException {
+		ExecutorService virtualPool = apiDef.useVirtualThreads() ? newVirtualThreadPerTaskExecutor() : null;
+		if(virtualPool != null) {
+			executeCallableRequestsConcurrently(workerFunction, iterList, apiDef.getMaxConcurrentWorkItems(), virtualPool, onComplete);
+		} else {
+			executeCallableRequestsConcurrently(workerFunction, iterList, apiDef.getSessionCapacity(), onComplete);
+		}
+	}
+	
+	private static void executeCallableRequestsConcurrently(ExecuteFunctionalInterface workerFunction, Iterator<?> iterList, int threadNum, ExecutorService pool, Consumer<String> onComplete) throws InterruptedException, ExecutionException {
+		CompletionService<String> completionService = new ExecutorCompletionService<String>(pool);
+		int inFlight = 0;
+		try {
+			while(inFlight < threadNum && iterList.hasNext()) {
+				completionService.submit( bindWorker(iterList.next(), workerFunction) );
+				inFlight++;
 			}
-			for(int k = 0; k < theseFutures.size(); k++) {
-				String s = (String) theseFutures.get(k).get();
-					//System.out.println(s);
+			//Refill a slot each time any in flight request completes
+			while(inFlight > 0) {
+				String s = completionService.take().get();
+				inFlight--;
+				onComplete.accept(s);
+				if(iterList.hasNext()) {
+					completionService.submit( bindWorker(iterList.next(), workerFunction) );
+					inFlight++;
+				}
 			}
-			startIndx += threadNum;
-			iterX++;
+		} finally {
+			pool.shutdown();
 		}
-		
-		pool.shutdown();
+	}
+	
+	/*
+	 * 	Create an executor that starts a new virtual thread for each task
+	 * 	Looked up reflectively so the tool still runs on JDKs without virtual threads (before 21)
+	 * 
+	 * 	@Return	virtual thread executor, or null if the running JDK does not support them
+	 */
+	static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			Log.warn("Virtual threads are not supported by this JDK; falling back to a fixed thread pool");
+			return null;
+		}
+	}
+	
+	/*
+	 * 	Same as above - iterate through a list and ignore each worker's return value
+	 */
+	public static void executeCallableRequestsConcurrently(ExecuteFunctionalInterface workerFunction, List<?> iterList, int threadNum) throws InterruptedException, ExecutionException {
+		executeCallableRequestsConcurrently(workerFunction, iterList.iterator(), threadNum, (s) -> {});
 	}
 	
 	/*
@@ -91,53 +145,143 @@ public class Common {
 		executeCallableRequestsConcurrently(workerFunction, iterList, 5);
 	}
 	
-	
 	/*
-	 * 	Iterate through the list from startIndx to stardInx + threadNum
-	 * 	Bind each list item to the workerFunction and add it to a list of Callables
+	 * 	Bind a list item to the workerFunction
 	 * 	
-	 * 	@Param	startIndx		start index of iterList
-	 * 	@Param	threadNum		Maximum amount of callables added to return callable arraylist
-	 * 	@Param	workerFunction	Bind list item to function and add to callable arraylist
+	 * 	@Param	item			list item passed to workerFunction as its only parameter
+	 * 	@Param	workerFunction	function to bind
+	 * 
+	 * 	@Return	Callable object that is to be executed in a thread pool
+	 */
+	private static CallableWorker bindWorker(Object item, ExecuteFunctionalInterface workerFunction) {
+		CallableWorker worker = new CallableWorker();
+		worker.defineInput(item);
+		worker.setFunctionToBind(meteredFunction(workerFunction));
+		IntegrationMetrics.workSubmitted();
+		return worker;
+	}
+	
+	/*
+	 * 	Wrap a worker function so the work item metrics track it from being picked up by a worker to finishing
+	 * 	The caller records workSubmitted when it hands the work to a pool
+	 */
+	static ExecuteFunctionalInterface meteredFunction(ExecuteFunctionalInterface workerFunction) {
+		return (Object[] params) -> {
+			IntegrationMetrics.workStarted();
+			try {
+				return workerFunction.exec(params);
+			} finally {
+				IntegrationMetrics.workFinished();
+			}
+		};
+	}
+	
+	/*
+	 * 	Copy a stream to a file through NIO channels using a pooled transfer buffer
+	 * 	Bytes are written exactly as read, to a .part file that is moved into place once complete,
+	 * 	so memory use does not depend on the size of the document and a failed copy never leaves
+	 * 	a truncated file under the target name
 	 * 
-	 * 	@Return	List of callable object that are to be returned and then executed in a thread pool concurrently
-	 */
-	private static ArrayList<CallableWorker> getNextPoolForExec(int startIndx, int threadNum, List<?> results, ExecuteFunctionalInterface workerFunction) {
-		ArrayList<CallableWorker> callablePool = new ArrayList<CallableWorker>();
-		int i = 0;
-		while(i < threadNum) {
-			if( startIndx < results.size() ) {
-				Object thisNode = results.get(startIndx);
-				CallableWorker worker1 = new CallableWorker();
-				worker1.defineInput(thisNode);
-				worker1.setFunctionToBind(workerFunction);
-				callablePool.add(worker1);
+	 * 	@Param	in		stream to copy; read to the end but not closed
+	 * 	@Param	target	file to create or replace
+	 * 	@Return	Return number of bytes written
+	 */
+	public static long streamToFile(InputStream in, Path target) throws IOException {
+		return streamToFile(in, target, false);
+	}
+	
+	/*
+	 * 	Same as above - if durable, the file and its directory entry are forced to disk before returning,
+	 * 	so the document survives a power loss once this returns
+	 */
+	public static long streamToFile(InputStream in, Path target, boolean durable) throws IOException {
+		Path partial = partialFileFor(target);
+		ByteBuffer buffer = takeTransferBuffer();
+		long written = 0;
+		//Only time spent writing counts toward the disk metrics, not time waiting on the network
+		long diskNanos = 0;
+		try {
+			ReadableByteChannel source = Channels.newChannel(in);
+			long start = System.nanoTime();
+			try (FileChannel sink = FileChannel.open(partial, StandardOpenOption.CREATE, 
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				diskNanos += System.nanoTime() - start;
+				while(source.read(buffer) != -1) {
+					buffer.flip();
+					start = System.nanoTime();
+					while(buffer.hasRemaining()) {
+						written += sink.write(buffer);
+					}
+					diskNanos += System.nanoTime() - start;
+					buffer.clear();
+				}
+				start = System.nanoTime();
+				if(durable) {
+					sink.force(false);
+				}
 			}
-			i++;
-			startIndx++;
+			commitPartialFile(partial, target, durable);
+			diskNanos += System.nanoTime() - start;
+			IntegrationMetrics.recordDiskWrite(diskNanos, written);
+		} catch (IOException e) {
+			Files.deleteIfExists(partial);
+			throw e;
+		} finally {
+			buffer.clear();
+			transferBuffers.offer(buffer);
 		}
-		return callablePool;
+		return written;
+	}
+	
+	/*
+	 * 	@Return	Return the .part file a document is written to before being moved into place at target
+	 */
+	public static Path partialFileFor(Path target) {
+		return target.resolveSibling(target.getFileName() + ".part");
+	}
+	
+	/*
+	 * 	Move a completely written .part file into place, replacing any previous file at target
+	 */
+	public static void commitPartialFile(Path partial, Path target) throws IOException {
+		commitPartialFile(partial, target, false);
+	}
+	
+	/*
+	 * 	Same as above - if durable, force the rename to disk as well; the .part file must already be forced
+	 */
+	public static void commitPartialFile(Path partial, Path target, boolean durable) throws IOException {
+		Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		if(durable) {
+			forceDirectory(target.toAbsolutePath().getParent());
+		}
+	}
+	
+	/*
+	 * 	Force a directory's entries to disk so a file just created or renamed in it survives a power loss
+	 * 	Some platforms cannot open a directory as a channel; there the rename is left to the file system
+	 */
+	static void forceDirectory(Path directory) {
+		try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+			dir.force(true);
+		} catch (IOException e) {
+			// Not supported here
+		}
+	}
+	
+	private static ByteBuffer takeTransferBuffer() {
+		ByteBuffer buffer = transferBuffers.poll();
+		return buffer != null ? buffer : ByteBuffer.allocateDirect(transferBufferSize);
 	}
 	
 	/*
 	 * 	Pretty print XML string using indent
+	 * 	Formatting is delegated to XmlFormatter, which reuses its transformers between documents
 	 * 
 	 * 	@Return	return a string which once printed will be human readable
 	 */
 	public static String prettyFormat(String input, int indent) {
-	    try {
-	        Source xmlInput = new StreamSource(new StringReader(input));
-	        StringWriter stringWriter = new StringWriter();
-	        StreamResult xmlOutput = new StreamResult(stringWriter);
-	        TransformerFactory transformerFactory = TransformerFactory.newInstance();
-	        transformerFactory.setAttribute("indent-number", indent);
-	        Transformer transformer = transformerFactory.newTransformer(); 
-	        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-	        transformer.transform(xmlInput, xmlOutput);
-	        return xmlOutput.getWriter().toString();
-	    } catch (Exception e) {
-	        throw new RuntimeException(e); // simple exception handling, please review it
-	    }
+		return XmlFormatter.prettyFormat(input, indent);
 	}
 
 	/*
@@ -0,0 +1,195 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import infor.api.integration.InforAPIClient;
+import infor.api.integration.Log;
+import infor.api.resources.IntegrationQueryResultNode;
+
+/*
+ * 	Outbox deletes for the integrationApiDownloader, run as their own pipeline stage
+ *
+ * 	A fetch worker submits a document once its file is forced to disk and WRITTEN is forced to the journal,
+ * 	and moves straight on to its next fetch - it never waits on the delete's round trip. One dispatcher thread
+ * 	takes up to batchSize queued deletes at a time and sends them asynchronously, with at most concurrency
+ * 	in flight; the deletes still take their sessions from the client's limiter like any other request.
+ * 	The Integration API deletes one message per request, so a batch is sent as separate requests, but the
+ * 	DELETED records of a batch are appended to the journal together once the whole batch is answered
+ *
+ * 	Nothing is lost if the process dies with deletes still queued: their documents are WRITTEN in the journal
+ * 	and are still in the outbox, so the next listing skips the fetch and submits the delete again. A failed
+ * 	delete is left the same way for the next poll. A document already queued or in flight is not queued twice,
+ * 	and the downloader skips it when it is listed again before its delete is answered
+ */
+public class DeleteStage {
+	private static final IntegrationQueryResultNode STOP = new IntegrationQueryResultNode();
+
+	private final InforAPIClient client;
+	private final DownloadJournal journal;
+	private final int batchSize;
+	private final Semaphore permits;
+	private final BlockingQueue<IntegrationQueryResultNode> queue = new LinkedBlockingQueue<IntegrationQueryResultNode>();
+	//actionUids queued or in flight
+	private final Set<Integer> pending = ConcurrentHashMap.newKeySet();
+	private final Object idle = new Object();
+	private final Thread dispatcher;
+	private volatile boolean closed = false;
+
+	/*
+	 * 	@Param	client		Client of the tenant whose outbox documents are deleted
+	 * 	@Param	journal		Journal DELETED is recorded in, or null
+	 * 	@Param	concurrency	Most deletes in flight at once
+	 * 	@Param	batchSize	Most queued deletes taken and sent together
+	 */
+	public DeleteStage(InforAPIClient client, DownloadJournal journal, int concurrency, int batchSize) {
+		this.client = client;
+		this.journal = journal;
+		this.permits = new Semaphore(Math.max(1, concurrency));
+		this.batchSize = Math.max(1, batchSize);
+		this.dispatcher = new Thread(this::dispatch, "delete-stage");
+		this.dispatcher.setDaemon(true);
+		this.dispatcher.start();
+	}
+
+	/*
+	 * 	Queue the delete of a document whose file is durably written
+	 *
+	 * 	@Return	Return false if the document was already queued or in flight, or the stage is closed
+	 */
+	public boolean submit(IntegrationQueryResultNode node) {
+		if(this.closed || ! this.pending.add(node.getActionId())) {
+			return false;
+		}
+		this.queue.add(node);
+		return true;
+	}
+
+	/*
+	 * 	@Return	Return true if the delete of node is queued or in flight - its document is still listed in the outbox
+	 * 			until the delete is answered, but must not be fetched again
+	 */
+	public boolean isPending(IntegrationQueryResultNode node) {
+		return this.pending.contains(node.getActionId());
+	}
+
+	/*
+	 * 	@Return	Return number of deletes queued or in flight
+	 */
+	public int getPendingCount() {
+		return this.pending.size();
+	}
+
+	/*
+	 * 	Block until every delete submitted so far has been answered
+	 *
+	 * 	@Param	timeoutMillis	Longest to wait
+	 * 	@Return	Return true if no delete is left queued or in flight
+	 */
+	public boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		synchronized(this.idle) {
+			while(! this.pending.isEmpty()) {
+				long wait = deadline - System.currentTimeMillis();
+				if(wait <= 0) {
+					return false;
+				}
+				this.idle.wait(wait);
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * 	Stop taking deletes, and wait for the ones already submitted to be answered
+	 *
+	 * 	@Param	timeoutMillis	Longest to wait for deletes queued or in flight
+	 * 	@Return	Return true if every submitted delete was answered in time
+	 */
+	public boolean close(long timeoutMillis) throws InterruptedException {
+		this.closed = true;
+		boolean finished = awaitIdle(timeoutMillis);
+		if(! finished) {
+			Log.warn("{} outbox deletes still pending at shutdown - they are retried on the next run", this.pending.size());
+		}
+		this.queue.add(STOP);
+		return finished;
+	}
+
+	private void dispatch() {
+		List<IntegrationQueryResultNode> batch = new ArrayList<IntegrationQueryResultNode>(this.batchSize);
+		try {
+			while(true) {
+				batch.add(this.queue.take());
+				this.queue.drainTo(batch, this.batchSize - 1);
+				if(batch.removeIf((node) -> node == STOP)) {
+					//Anything queued behind the marker was submitted after close and is retried on the next run
+					release(batch);
+					return;
+				}
+				sendBatch(new ArrayList<IntegrationQueryResultNode>(batch));
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			release(batch);
+		}
+	}
+
+	/*
+	 * 	Send each delete of a batch as a permit frees up, recording the ones the server accepted once all are answered
+	 */
+	private void sendBatch(List<IntegrationQueryResultNode> batch) throws InterruptedException {
+		List<CompletableFuture<Boolean>> sent = new ArrayList<CompletableFuture<Boolean>>(batch.size());
+		for(IntegrationQueryResultNode node : batch) {
+			this.permits.acquire();
+			sent.add(this.client.deleteIntegrationDocumentAsync(node.getActionId())
+					.handle((responseCode, e) -> {
+						this.permits.release();
+						return e == null && responseCode == 202;
+					}));
+		}
+		CompletableFuture.allOf(sent.toArray(new CompletableFuture<?>[0])).whenComplete((v, e) -> {
+			List<IntegrationQueryResultNode> deleted = new ArrayList<IntegrationQueryResultNode>(batch.size());
+			for(int i = 0; i < batch.size(); i++) {
+				if(sent.get(i).join()) {
+					deleted.add(batch.get(i));
+				} else {
+					Log.warn("Delete of message {} failed - it stays in the outbox for the next poll", batch.get(i).getActionId());
+				}
+			}
+			recordDeleted(deleted);
+			release(batch);
+		});
+	}
+
+	private void recordDeleted(List<IntegrationQueryResultNode> deleted) {
+		if(deleted.isEmpty()) {
+			return;
+		}
+		if(Log.isEnabled(Log.Level.DEBUG)) {
+			Log.debug("Deleted {} messages from outbox", deleted.size());
+		}
+		if(this.journal == null) {
+			return;
+		}
+		try {
+			this.journal.record(DownloadJournal.State.DELETED, deleted);
+		} catch (IOException e) {
+			Log.warn("Cannot record {} deletes in download journal: {}", deleted.size(), e.getMessage());
+		}
+	}
+
+	private void release(List<IntegrationQueryResultNode> batch) {
+		for(IntegrationQueryResultNode node : batch) {
+			this.pending.remove(node.getActionId());
+		}
+		synchronized(this.idle) {
+			this.idle.notifyAll();
+		}
+	}
+}
@@ -0,0 +1,264 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import infor.api.integration.Log;
+import infor.api.resources.IntegrationQueryResultNode;
+
+/*
+ * 	Append-only record of the outbox documents the integrationApiDownloader has handled
+ *
+ * 	Each line is "<state> <actionUid> <messageUid>", appended as a document is fetched, written to its
+ * 	file and deleted from the outbox. On start the journal is replayed so a later run can skip documents
+ * 	it already wrote and finish the delete of any it wrote but did not get to delete before a crash.
+ * 	A document only FETCHED was not completely written and is fetched again
+ * 	Lines go straight to the OS as they are appended so they survive the process dying; a torn last line
+ * 	is ignored on replay. Once enough lines have been appended that most are superseded, the journal is
+ * 	rewritten with one line per document still in the outbox
+ * 	Records that must survive a power loss are group committed: each is appended under the lock, then the
+ * 	caller waits outside it for a force that covers its record. One caller forces at a time, on behalf of
+ * 	every record appended before it started, so concurrent workers share an fsync instead of queueing for one each
+ */
+public class DownloadJournal implements Closeable {
+	public static final String journalFileName = ".outbox-download-journal";
+	//Compact once this many lines have been appended, or twice the documents tracked if that is more
+	static final int compactAfterRecords = 10000;
+
+	public enum State { FETCHED, WRITTEN, DELETED }
+
+	private final Path journalPath;
+	private final Map<Integer, Entry> entries = new ConcurrentHashMap<Integer, Entry>();
+	private FileChannel channel;
+	private int recordsSinceCompaction;
+	//Records appended so far, guarded by this
+	private long appendedRecords;
+	//Records known to be on disk, and whether a caller is forcing the journal now - guarded by forceLock
+	private final Object forceLock = new Object();
+	private long forcedRecords;
+	private boolean forcing;
+
+	private static final class Entry {
+		final State state;
+		final Integer messageUid;
+
+		Entry(State state, Integer messageUid) {
+			this.state = state;
+			this.messageUid = messageUid;
+		}
+	}
+
+	/*
+	 * 	Open the journal in a download folder, replaying any journal a previous run left there
+	 *
+	 * 	@Param	folder	Folder documents are downloaded to
+	 */
+	public DownloadJournal(Path folder) throws IOException {
+		this.journalPath = folder.resolve(journalFileName);
+		if(Files.exists(this.journalPath)) {
+			replay();
+		}
+		compact();
+	}
+
+	/*
+	 * 	@Return	Return true if the document was written to its file by this or an earlier run
+	 */
+	public boolean isWritten(IntegrationQueryResultNode node) {
+		Entry entry = this.entries.get(node.getActionId());
+		return entry != null && entry.state != State.FETCHED;
+	}
+
+	/*
+	 * 	@Return	Return true if the document was deleted from the outbox by this or an earlier run
+	 */
+	public boolean isDeleted(IntegrationQueryResultNode node) {
+		Entry entry = this.entries.get(node.getActionId());
+		return entry != null && entry.state == State.DELETED;
+	}
+
+	/*
+	 * 	Append a document's new state to the journal
+	 *
+	 * 	@Param	state	FETCHED, WRITTEN or DELETED
+	 * 	@Param	node	Outbox document
+	 * 	@Param	durable	wait until the record is forced to disk before returning, so it survives a power loss;
+	 * 					used before an outbox delete that cannot be undone
+	 */
+	public void record(State state, IntegrationQueryResultNode node, boolean durable) throws IOException {
+		long record = append(state, node);
+		if(durable) {
+			awaitForced(record);
+		}
+	}
+
+	/*
+	 * 	@Return	Return sequence number of the appended record
+	 */
+	private synchronized long append(State state, IntegrationQueryResultNode node) throws IOException {
+		Entry entry = new Entry(state, node.getMessageUid());
+		this.entries.put(node.getActionId(), entry);
+		ByteBuffer line = StandardCharsets.UTF_8.encode(formatLine(node.getActionId(), entry));
+		while(line.hasRemaining()) {
+			this.channel.write(line);
+		}
+		long record = ++this.appendedRecords;
+		if(++this.recordsSinceCompaction >= Math.max(compactAfterRecords, this.entries.size() * 2)) {
+			compact();
+		}
+		return record;
+	}
+
+	/*
+	 * 	Block until every record up to and including record is on disk
+	 * 	If no force is running this caller forces the journal, covering every record appended so far;
+	 * 	otherwise it waits for the running force and checks again
+	 */
+	private void awaitForced(long record) throws IOException {
+		while(true) {
+			synchronized(this.forceLock) {
+				while(this.forcing && this.forcedRecords < record) {
+					try {
+						this.forceLock.wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException("Interrupted waiting for the download journal to be forced");
+					}
+				}
+				if(this.forcedRecords >= record) {
+					return;
+				}
+				this.forcing = true;
+			}
+			long covered;
+			FileChannel toForce;
+			synchronized(this) {
+				covered = this.appendedRecords;
+				toForce = this.channel;
+			}
+			boolean forced = false;
+			try {
+				toForce.force(false);
+				forced = true;
+			} catch (ClosedChannelException e) {
+				//Compacted or closed meanwhile - both force the journal themselves, so check again
+			} finally {
+				synchronized(this.forceLock) {
+					this.forcing = false;
+					if(forced) {
+						this.forcedRecords = Math.max(this.forcedRecords, covered);
+					}
+					this.forceLock.notifyAll();
+				}
+			}
+		}
+	}
+
+	private void markForced(long record) {
+		synchronized(this.forceLock) {
+			this.forcedRecords = Math.max(this.forcedRecords, record);
+			this.forceLock.notifyAll();
+		}
+	}
+
+	/*
+	 * 	Same as above for several documents at once, appended in one write and not forced to disk
+	 *
+	 * 	@Param	state	FETCHED, WRITTEN or DELETED
+	 * 	@Param	nodes	Outbox documents
+	 */
+	public synchronized void record(State state, List<IntegrationQueryResultNode> nodes) throws IOException {
+		StringBuilder lines = new StringBuilder();
+		for(IntegrationQueryResultNode node : nodes) {
+			Entry entry = new Entry(state, node.getMessageUid());
+			this.entries.put(node.getActionId(), entry);
+			lines.append(formatLine(node.getActionId(), entry));
+		}
+		ByteBuffer buffer = StandardCharsets.UTF_8.encode(lines.toString());
+		while(buffer.hasRemaining()) {
+			this.channel.write(buffer);
+		}
+		this.appendedRecords += nodes.size();
+		this.recordsSinceCompaction += nodes.size();
+		if(this.recordsSinceCompaction >= Math.max(compactAfterRecords, this.entries.size() * 2)) {
+			compact();
+		}
+	}
+
+	/*
+	 * 	Rewrite the journal with one line per tracked document
+	 * 	Deleted documents are dropped - they are gone from the outbox so will not be listed again
+	 * 	The new journal is written beside the old one, forced, and moved over it, so a crash leaves one or the
+	 * 	other - every record appended so far is on disk afterwards
+	 */
+	public synchronized void compact() throws IOException {
+		this.entries.values().removeIf((entry) -> entry.state == State.DELETED);
+		Path compacted = this.journalPath.resolveSibling(journalFileName + ".compact");
+		try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+				BufferedWriter writer = new BufferedWriter(Channels.newWriter(out, StandardCharsets.UTF_8))) {
+			for(Map.Entry<Integer, Entry> e : this.entries.entrySet()) {
+				writer.write(formatLine(e.getKey(), e.getValue()));
+			}
+			writer.flush();
+			out.force(false);
+		}
+		if(this.channel != null) {
+			this.channel.close();
+		}
+		Files.move(compacted, this.journalPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		Common.forceDirectory(this.journalPath.toAbsolutePath().getParent());
+		this.channel = FileChannel.open(this.journalPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		this.recordsSinceCompaction = 0;
+		markForced(this.appendedRecords);
+	}
+
+	/*
+	 * 	@Return	Return number of documents tracked
+	 */
+	public int size() {
+		return this.entries.size();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		this.channel.force(false);
+		this.channel.close();
+		markForced(this.appendedRecords);
+	}
+
+	private void replay() throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(this.journalPath, StandardCharsets.UTF_8)) {
+			String line;
+			while((line = reader.readLine()) != null) {
+				String[] fields = line.split(" ");
+				if(fields.length != 3) {
+					continue;
+				}
+				try {
+					Integer messageUid = fields[2].equals("null") ? null : Integer.valueOf(fields[2]);
+					this.entries.put(Integer.valueOf(fields[1]), new Entry(State.valueOf(fields[0]), messageUid));
+				} catch (IllegalArgumentException e) {
+					//A line torn by a crash part way through writing it
+				}
+			}
+		}
+		Log.info("Download journal {} tracks {} documents", this.journalPath, this.entries.size());
+	}
+
+	private static String formatLine(Integer actionUid, Entry entry) {
+		return entry.state + " " + actionUid + " " + entry.messageUid + "\n";
+	}
+}
@@ -0,0 +1,170 @@
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import infor.api.integration.InforAPIClient;
+import infor.api.integration.InforAPIDefinition;
+import infor.api.integration.IntegrationAPIConnect;
+import infor.api.integration.IntegrationMetrics;
+import infor.api.integration.Log;
+import infor.api.resources.IntegrationQueryResultNode;
+
+/*
+ * 	Long running poll loop for the integrationApiDownloader
+ *
+ * 	Listing and fetching are pipelined: each listed document is handed to a long lived worker pool and the
+ * 	poll thread moves straight on, so the next list request goes out while the last batch is still being
+ * 	fetched. A document listed again while its fetch is still in flight is skipped, by actionUid; one listed
+ * 	again while its delete is still queued to a DeleteStage is skipped by the fetch function
+ * 	The poll interval drops to the minimum whenever a poll finds new documents and doubles, up to the
+ * 	maximum, each time one finds none with nothing left in flight - a backlog is drained back to back, an
+ * 	empty outbox is polled slowly
+ * 	stop() lets the work in flight finish before returning, so it can be called from a shutdown hook
+ */
+public class DownloaderDaemon {
+	private final ExecuteFunctionalInterface fetchDocFn;
+	private final InforAPIClient client;
+	private final ExecutorService pool;
+	//Bounds the documents handed to the pool but not yet finished, so listing never runs far ahead of fetching
+	private final Semaphore slots;
+	private final Set<Integer> inFlight = ConcurrentHashMap.newKeySet();
+	private final long minIntervalMillis;
+	private final long maxIntervalMillis;
+	private volatile boolean running = true;
+	private volatile boolean sleeping;
+	private volatile Thread pollThread;
+
+	/*
+	 * 	@Param	fetchDocFn			Fetches, writes and deletes, or queues the delete of, one IntegrationQueryResultNode
+	 * 	@Param	client				Client of the tenant whose outbox is polled; its api definition sizes the worker pool as for a single run
+	 * 	@Param	minPollSeconds		Poll interval while documents keep arriving
+	 * 	@Param	maxPollSeconds		Longest poll interval while the outbox is empty
+	 */
+	public DownloaderDaemon(ExecuteFunctionalInterface fetchDocFn, InforAPIClient client, int minPollSeconds, int maxPollSeconds) {
+		InforAPIDefinition apiDef = client.getApiDefinition();
+		this.fetchDocFn = Common.meteredFunction(fetchDocFn);
+		this.client = client;
+		ExecutorService virtualPool = apiDef.useVirtualThreads() ? Common.newVirtualThreadPerTaskExecutor() : null;
+		if(virtualPool != null) {
+			this.pool = virtualPool;
+			this.slots = new Semaphore(apiDef.getMaxConcurrentWorkItems());
+		} else {
+			this.pool = Executors.newFixedThreadPool(apiDef.getSessionCapacity());
+			//Keep the pool's queue one batch deep so a worker never waits on the poll thread
+			this.slots = new Semaphore(apiDef.getSessionCapacity() * 2);
+		}
+		this.minIntervalMillis = Math.max(0, minPollSeconds) * 1000L;
+		this.maxIntervalMillis = Math.max(minPollSeconds, maxPollSeconds) * 1000L;
+	}
+
+	/*
+	 * 	Poll the outbox on the calling thread until stop() is called
+	 */
+	public void run() {
+		this.pollThread = Thread.currentThread();
+		long interval = this.minIntervalMillis;
+		while(this.running) {
+			int submitted;
+			try {
+				submitted = pollOnce();
+			} catch (InterruptedException e) {
+				break;
+			} catch (RuntimeException e) {
+				Log.warn("Outbox poll failed - {}", e);
+				submitted = 0;
+			}
+			if(submitted > 0) {
+				interval = this.minIntervalMillis;
+			} else if(this.inFlight.isEmpty()) {
+				interval = Math.min(this.maxIntervalMillis, Math.max(1000L, interval * 2));
+			}
+			if(Log.isEnabled(Log.Level.DEBUG)) {
+				Log.debug("Poll found {} new documents, {} in flight; next poll in {}ms", submitted, this.inFlight.size(), interval);
+			}
+			try {
+				this.sleeping = true;
+				if(this.running) {
+					Thread.sleep(interval);
+				}
+			} catch (InterruptedException e) {
+				break;
+			} finally {
+				this.sleeping = false;
+			}
+		}
+	}
+
+	/*
+	 * 	List the whole outbox once, handing each document not already in flight to the worker pool
+	 * 	Blocks only while every slot is taken
+	 *
+	 * 	@Return	Return number of documents handed to the pool
+	 */
+	int pollOnce() throws InterruptedException {
+		int submitted = 0;
+		Iterator<IntegrationQueryResultNode> results = IntegrationAPIConnect.pollOutboxPages(this.client);
+		while(this.running && results.hasNext()) {
+			IntegrationQueryResultNode node = results.next();
+			if(! this.inFlight.add(node.getActionId())) {
+				continue;
+			}
+			this.slots.acquire();
+			if(! this.running) {
+				this.slots.release();
+				this.inFlight.remove(node.getActionId());
+				break;
+			}
+			IntegrationMetrics.workSubmitted();
+			this.pool.execute(() -> fetch(node));
+			submitted++;
+		}
+		return submitted;
+	}
+
+	private void fetch(IntegrationQueryResultNode node) {
+		try {
+			Log.debug(this.fetchDocFn.exec(new Object[] { node }));
+		} catch (Exception e) {
+			Log.error("Failed to download " + node.getActionId(), e);
+		} finally {
+			this.inFlight.remove(node.getActionId());
+			this.slots.release();
+		}
+	}
+
+	/*
+	 * 	Stop polling and wait for the documents in flight to finish
+	 *
+	 * 	@Param	timeoutMillis	Longest to wait for work in flight
+	 * 	@Return	Return true if all work in flight finished in time
+	 */
+	public boolean stop(long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		this.running = false;
+		Thread poller = this.pollThread;
+		if(poller != null) {
+			//Only cut a sleep short - a list request in progress is left to finish
+			if(this.sleeping) {
+				poller.interrupt();
+			}
+			poller.join(Math.max(1, deadline - System.currentTimeMillis()));
+		}
+		this.pool.shutdown();
+		boolean finished = this.pool.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+		if(! finished) {
+			Log.warn("{} documents still in flight at shutdown", this.inFlight.size());
+		}
+		return finished;
+	}
+
+	/*
+	 * 	@Return	Return number of documents handed to the pool and not yet finished
+	 */
+	public int getInFlightCount() {
+		return this.inFlight.size();
+	}
+}
@@ -0,0 +1,202 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.w3c.dom.Document;
+
+import infor.api.integration.Log;
+
+/*
+ * 	Lazily parse the files in a folder for the integrationApiUploader
+ *
+ * 	One reader thread walks the folder with a DirectoryStream, so the folder is never listed in full,
+ * 	and parses each file just in time into a bounded queue. The upload scheduler takes Documents from the
+ * 	queue as workers free up - the reader stays at most queueDepth files ahead of the uploads, so memory
+ * 	is constant however many files are in the folder and the first upload starts straight away
+ * 	A file that cannot be parsed is reported and skipped
+ *
+ * 	Files of at least streamThreshold bytes are not parsed - their Path is queued instead so the uploader
+ * 	can stream them from disk; a large document never has to fit in memory as a DOM or a String
+ * 	A threshold of 0 passes every file through untouched, for uploads that send files exactly as they are
+ */
+public class FolderDocumentSource implements Iterator<Object>, Closeable {
+	//Marks the end of the folder in the queue
+	private static final Object END = new Object();
+	//Looked up once; each thread builds its own DocumentBuilder from it since a builder is not thread safe
+	private static final DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+	//Only used to check passed through files are well formed - no DTDs or external entities are read
+	private static final XMLInputFactory xmlInputFactory = newXmlInputFactory();
+
+	private final Path folder;
+	private final long streamThreshold;
+	private final BlockingQueue<Object> queue;
+	private final Thread reader;
+	private Object next;
+	private int filesRead;
+	private volatile boolean closed;
+
+	/*
+	 * 	@Param	folder		Folder of XML files to upload
+	 * 	@Param	queueDepth	Number of parsed Documents kept ready ahead of the upload workers
+	 * 	@Param	streamThreshold		Files of this many bytes or more are handed out as a Path rather than parsed
+	 */
+	public FolderDocumentSource(Path folder, int queueDepth, long streamThreshold) {
+		this.folder = folder;
+		this.streamThreshold = streamThreshold;
+		this.queue = new ArrayBlockingQueue<Object>(Math.max(1, queueDepth));
+		this.reader = new Thread(this::readFolder, "folder-reader");
+		this.reader.setDaemon(true);
+		this.reader.start();
+	}
+
+	@Override
+	public boolean hasNext() {
+		if(this.next == null) {
+			try {
+				this.next = this.queue.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				this.next = END;
+			}
+		}
+		return this.next != END;
+	}
+
+	/*
+	 * 	@Return	Return the next file's parsed Document, or its Path if it is to be streamed
+	 */
+	@Override
+	public Object next() {
+		if(! hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Object doc = this.next;
+		this.next = null;
+		this.filesRead++;
+		return doc;
+	}
+
+	/*
+	 * 	@Return	Number of files handed out so far
+	 */
+	public int getFilesRead() {
+		return this.filesRead;
+	}
+
+	/*
+	 * 	Stop the reader thread - any Documents still queued are dropped
+	 */
+	@Override
+	public void close() {
+		this.closed = true;
+		this.reader.interrupt();
+		this.queue.clear();
+	}
+
+	private void readFolder() {
+		try {
+			DocumentBuilder builder = FolderDocumentSource.newDocumentBuilder();
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(this.folder)) {
+				for(Path file : files) {
+					if(this.closed) {
+						break;
+					}
+					if(! Files.isRegularFile(file)) {
+						continue;
+					}
+					if(Files.size(file) >= this.streamThreshold) {
+						this.queue.put(file);
+						continue;
+					}
+					Document doc = parse(builder, file);
+					if(doc != null) {
+						this.queue.put(doc);
+					}
+				}
+			} catch (IOException e) {
+				Log.error("Cannot read input folder {} - {}", this.folder, e.getMessage());
+			}
+		} catch (InterruptedException e) {
+			return;
+		} catch (ParserConfigurationException e) {
+			Log.error("Cannot create XML parser", e);
+		}
+		this.putEnd();
+	}
+
+	private static Document parse(DocumentBuilder builder, Path file) {
+		try {
+			Document doc = builder.parse(file.toFile());
+			builder.reset();
+			return doc;
+		} catch (Exception e) {
+			Log.warn("Cannot parse {} - skipping it: {}", file, e.getMessage());
+			builder.reset();
+			return null;
+		}
+	}
+
+	private void putEnd() {
+		try {
+			this.queue.put(END);
+		} catch (InterruptedException e) {
+			//Closed while the queue was full - nobody is waiting for the end marker
+		}
+	}
+
+	/*
+	 * 	Check a file is well formed XML by reading it through once with a StAX cursor
+	 * 	Nothing is built from the events, so this is far cheaper than parsing the file into a DOM
+	 * 
+	 * 	@Param	file	XML file to check
+	 * 	@Return	Return true if the whole file could be read as XML
+	 */
+	public static boolean isWellFormed(Path file) {
+		try (InputStream in = Files.newInputStream(file)) {
+			XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(in);
+			try {
+				while(reader.hasNext()) {
+					reader.next();
+				}
+			} finally {
+				reader.close();
+			}
+			return true;
+		} catch (XMLStreamException e) {
+			Log.warn("{} is not well formed XML: {}", file, e.getMessage());
+		} catch (IOException e) {
+			Log.warn("Cannot read {} - {}", file, e.getMessage());
+		}
+		return false;
+	}
+	
+	/*
+	 * 	@Return	a new DocumentBuilder from the shared factory
+	 */
+	static DocumentBuilder newDocumentBuilder() throws ParserConfigurationException {
+		synchronized(documentBuilderFactory) {
+			return documentBuilderFactory.newDocumentBuilder();
+		}
+	}
+
+	private static XMLInputFactory newXmlInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		return factory;
+	}
+}
@@ -0,0 +1,70 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.ls.DOMImplementationLS;
+
+/*
+ * 	Generate variations of a generic Order XML for the integrationApiUploader
+ *
+ * 	The template is serialized once with a marker appended to its poNumber text and split around the
+ * 	marker. Each payload is then the part before it, a unique "-XXX<i>" suffix, and the part after it -
+ * 	no DOM copy or re-serialization per order, and payloads are only built as the upload workers ask
+ * 	for them so any number of orders can be generated in constant memory
+ */
+public class GenericOrderTemplate implements Iterator<String> {
+	private final String prefix;
+	private final String suffix;
+	private final String poNumber;
+	private final int count;
+	private int generated;
+
+	/*
+	 * 	@Param	template	Parsed generic Order document - it is left unchanged
+	 * 	@Param	poNode		poNumber node within template
+	 * 	@Param	count		Number of payloads to generate
+	 */
+	public GenericOrderTemplate(Document template, Node poNode, int count) {
+		this.poNumber = poNode.getTextContent();
+		this.count = count;
+		String poNumberMarker = "#" + UUID.randomUUID() + "#";
+		poNode.setTextContent(this.poNumber + poNumberMarker);
+		String serialized;
+		try {
+			DOMImplementationLS domImplementation = (DOMImplementationLS) template.getImplementation();
+			serialized = domImplementation.createLSSerializer().writeToString(template);
+		} finally {
+			poNode.setTextContent(this.poNumber);
+		}
+		int split = serialized.indexOf(poNumberMarker);
+		this.prefix = serialized.substring(0, split);
+		this.suffix = serialized.substring(split + poNumberMarker.length());
+	}
+
+	/*
+	 * 	@Return	poNumber of the template that each generated order's poNumber is built from
+	 */
+	public String getPoNumber() {
+		return this.poNumber;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return this.generated < this.count;
+	}
+
+	/*
+	 * 	@Return	Return the next Order XML payload, its poNumber made unique with a "-XXX<i>" suffix
+	 */
+	@Override
+	public String next() {
+		if(! hasNext()) {
+			throw new NoSuchElementException();
+		}
+		String unique = "-XXX" + this.generated++;
+		return new StringBuilder(this.prefix.length() + unique.length() + this.suffix.length())
+				.append(this.prefix).append(unique).append(this.suffix).toString();
+	}
+}
@@ -1,18 +1,33 @@
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.ExecutionException;
 
+import javax.xml.stream.XMLStreamException;
+
 import infor.api.integration.InforAPI;
+import infor.api.integration.InforAPIClient;
 import infor.api.integration.InforAPIDefinition;
 import infor.api.integration.IntegrationAPIConnect;
+import infor.api.integration.IntegrationMetrics;
+import infor.api.integration.Log;
 import infor.api.resources.IntegrationQueryResultNode;
 
 public class IntegrationApiDownloader {
@@ -20,12 +35,31 @@ public class IntegrationApiDownloader {
 	public static final String doDeletePropKey = "deleteOnDownload";
 	public static final String outboxPollPropKey = "outboxPollIntervalInSeconds";
 	public static final String outputFolderKey = "outboxOutputFolder";
+	//Optional - stream each fetched document byte for byte to its file instead of reading it into memory
+	public static final String streamFetchPropKey = "streamFetchedDocuments";
+	//Optional - pretty or raw; defaults to raw when streaming so streamed documents stay byte for byte copies
+	public static final String outputFormatPropKey = "outputFormat";
+	//Optional - record fetched, written and deleted documents in a journal in the output folder so later runs
+	//skip documents already downloaded and finish deletes interrupted by a crash; on by default
+	public static final String downloadJournalPropKey = "useDownloadJournal";
+	//Optional - with deleteOnDownload, keep listing and fetching in a pipelined poll loop instead of in batches;
+	//the poll interval ranges from minOutboxPollIntervalInSeconds up to outboxPollIntervalInSeconds
+	public static final String daemonModePropKey = "daemonMode";
+	public static final String minOutboxPollPropKey = "minOutboxPollIntervalInSeconds";
+	//Optional - with deleteOnDownload, deletes are queued to a DeleteStage with this many in flight, sent deleteBatchSize
+	//at a time, rather than made by the fetch worker; defaults to maxConcurrentSessions, 0 deletes inline
+	public static final String deleteConcurrencyPropKey = "deleteConcurrency";
+	public static final String deleteBatchSizePropKey = "deleteBatchSize";
+	public static final int deleteBatchSizeDefault = 50;
+	public static final long deleteStageDrainTimeoutMillis = 120000;
+	public static final int minOutboxPollIntervalDefault = 1;
+	public static final long daemonShutdownTimeoutMillis = 120000;
 	public static final boolean doDeletePropDefaultVal = false;
 	public static final int outboxPollIntervalDefault = 600;
 	public static final String outputFolderDefault = ".";
 	
 	public static void main(String args[]) throws InterruptedException, ExecutionException {
-		System.out.println("Program Start...");
+		Log.info("Program Start...");
 		long start = System.nanoTime();
 		Properties apiProps = Common.loadApiDefPropertyFile();
 		InforAPIDefinition inforApiDef = new InforAPIDefinition(apiProps);
@@ -33,45 +67,217 @@ public class IntegrationApiDownloader {
 		Properties downloaderProperties = definePropertiesFromPropFile();
 				
 		boolean deleteAfterFetch = Boolean.parseBoolean( downloaderProperties.getProperty(doDeletePropKey));
-		Integer maxConcSessions = inforApiDef.getMaxConcurrentSessions();
+		boolean streamToFile = Boolean.parseBoolean( downloaderProperties.getProperty(streamFetchPropKey));
+		XmlFormatter.Format outputFormat = XmlFormatter.parseFormat(downloaderProperties.getProperty(outputFormatPropKey),
+				streamToFile ? XmlFormatter.Format.RAW : XmlFormatter.Format.PRETTY);
+		String outputFolder = downloaderProperties.getProperty(outputFolderKey);
+		DownloadJournal journal = openJournal(downloaderProperties, outputFolder);
+		InforAPIClient client = InforAPI.getDefaultClient();
+		DeleteStage deleteStage = openDeleteStage(downloaderProperties, deleteAfterFetch, client, journal);
 		//If delete on Fetch, Poll
-		if(deleteAfterFetch) {
+		if(deleteAfterFetch && Boolean.parseBoolean(downloaderProperties.getProperty(daemonModePropKey))) {
+			int maxPollSeconds = Integer.parseInt(downloaderProperties.getProperty(outboxPollPropKey));
+			int minPollSeconds = Integer.parseInt(downloaderProperties.getProperty(minOutboxPollPropKey, Integer.toString(minOutboxPollIntervalDefault)));
+			DownloaderDaemon daemon = new DownloaderDaemon(
+					buildFetchDocFunction(client, deleteAfterFetch, streamToFile, outputFormat, outputFolder, journal, deleteStage),
+					client, minPollSeconds, maxPollSeconds);
+			//Stop polling on Ctrl-C or SIGTERM, let the documents in flight finish, then flush the journal
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				Log.info("Shutting down - waiting for {} documents in flight", daemon.getInFlightCount());
+				try {
+					daemon.stop(daemonShutdownTimeoutMillis);
+					closeDeleteStage(deleteStage);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				closeJournal(journal);
+				Log.flush(1000);
+			}, "downloader-shutdown"));
+			daemon.run();
+		} else if(deleteAfterFetch) {
 			int milliSecondDelay = Integer.parseInt(downloaderProperties.getProperty(outboxPollPropKey)) * 1000;
 			while(true) {
-				runIntegrationApiDownloader(deleteAfterFetch, downloaderProperties.getProperty(outputFolderKey), maxConcSessions);
+				runIntegrationApiDownloader(deleteAfterFetch, streamToFile, outputFormat, outputFolder, journal, deleteStage, client);
 				Thread.sleep(milliSecondDelay);
 			}
 		} else {
-			runIntegrationApiDownloader(deleteAfterFetch, downloaderProperties.getProperty(outputFolderKey), maxConcSessions);
+			runIntegrationApiDownloader(deleteAfterFetch, streamToFile, outputFormat, outputFolder, journal, inforApiDef);
+			closeJournal(journal);
 		}
 		
 		long finish = System.nanoTime();
 		double msTimeElapsed = (( finish - start ) / 1e6);
-		System.out.println("Time elapsed " + msTimeElapsed);
+		Log.info("Time elapsed {}", msTimeElapsed);
+	}
+	
+	public static void runIntegrationApiDownloader(boolean deleteAfterFetch, boolean streamToFile, XmlFormatter.Format outputFormat, String outputFolderName, InforAPIDefinition apiDef) {
+		runIntegrationApiDownloader(deleteAfterFetch, streamToFile, outputFormat, outputFolderName, null, apiDef);
 	}
 	
-	public static void runIntegrationApiDownloader(boolean deleteAfterFetch, String outputFolderName, Integer threadNums) {
-		List<?> results = IntegrationAPIConnect.pollOutbox();
-		ExecuteFunctionalInterface fetchDocFn = (Object[] params) -> {
+	/*
+	 * 	Same as above, but skip documents the journal shows were already written, and only delete a
+	 * 	document once its file is written and recorded. journal may be null to download everything listed
+	 */
+	public static void runIntegrationApiDownloader(boolean deleteAfterFetch, boolean streamToFile, XmlFormatter.Format outputFormat, String outputFolderName, DownloadJournal journal, InforAPIDefinition apiDef) {
+		runIntegrationApiDownloader(deleteAfterFetch, streamToFile, outputFormat, outputFolderName, journal, InforAPI.getDefaultClient());
+	}
+	
+	/*
+	 * 	Same as above, but download the outbox of the tenant client belongs to
+	 */
+	public static void runIntegrationApiDownloader(boolean deleteAfterFetch, boolean streamToFile, XmlFormatter.Format outputFormat, String outputFolderName, DownloadJournal journal, InforAPIClient client) {
+		DeleteStage deleteStage = deleteAfterFetch ? new DeleteStage(client, journal, client.getApiDefinition().getMaxConcurrentSessions(), deleteBatchSizeDefault) : null;
+		runIntegrationApiDownloader(deleteAfterFetch, streamToFile, outputFormat, outputFolderName, journal, deleteStage, client);
+		closeDeleteStage(deleteStage);
+	}
+	
+	/*
+	 * 	Same as above, but queue deletes to deleteStage, which outlives the run - null deletes inline in the fetch worker
+	 * 	Returns once every delete queued by the run has been answered
+	 */
+	public static void runIntegrationApiDownloader(boolean deleteAfterFetch, boolean streamToFile, XmlFormatter.Format outputFormat, String outputFolderName, DownloadJournal journal, DeleteStage deleteStage, InforAPIClient client) {
+		//Page through the whole outbox; fetches start as soon as the first page arrives
+		Iterator<IntegrationQueryResultNode> results = IntegrationAPIConnect.pollOutboxPages(client);
+		ExecuteFunctionalInterface fetchDocFn = buildFetchDocFunction(client, deleteAfterFetch, streamToFile, outputFormat, outputFolderName, journal, deleteStage);
+		
+		//Execute requests concurrently
+		try {
+			Common.executeCallableRequestsConcurrently(fetchDocFn, results, client.getApiDefinition(), Log::debug);
+			if(deleteStage != null && ! deleteStage.awaitIdle(deleteStageDrainTimeoutMillis)) {
+				Log.warn("{} outbox deletes still pending after the download", deleteStage.getPendingCount());
+			}
+		} catch (InterruptedException e) {
+			Log.error("Download interrupted", e);
+		} catch (ExecutionException e) {
+			Log.error("Download failed", e);
+		}
+	}
+	
+	/*
+	 * 	Build the work done for each listed document: fetch it, write it to its file and, if deleteAfterFetch,
+	 * 	delete it from the outbox - recording each step in the journal if there is one
+	 * 	With deleteAfterFetch the file is forced to disk before the delete; with a deleteStage the delete is
+	 * 	queued to it and the worker is free for its next fetch straight away, and a document whose delete is
+	 * 	still pending is skipped
+	 */
+	static ExecuteFunctionalInterface buildFetchDocFunction(InforAPIClient client, boolean deleteAfterFetch, boolean streamToFile, XmlFormatter.Format outputFormat, String outputFolderName, DownloadJournal journal, DeleteStage deleteStage) {
+		return (Object[] params) -> {
 			IntegrationQueryResultNode boundNode = (IntegrationQueryResultNode) params[0];
-			System.out.println("Fetch document -> " + boundNode.getActionId());
-			String xmlResponse = IntegrationAPIConnect.fetchDocument(boundNode);
-			printDocToFS(xmlResponse, boundNode, outputFolderName);
-			if( deleteAfterFetch ) {
-				IntegrationAPIConnect.deleteDocument( boundNode );
+			//Still listed until its queued delete is answered - with or without a journal it is not fetched again
+			if( deleteStage != null && deleteStage.isPending(boundNode) ) {
+				return "Skipped " + boundNode.getMessageUid() + " - delete pending";
+			}
+			boolean written = journal != null && journal.isWritten(boundNode)
+					&& Files.exists(Paths.get(docFilePath(boundNode, outputFolderName)));
+			if( written && ! deleteAfterFetch ) {
+				return "Skipped " + boundNode.getMessageUid() + " - already downloaded";
+			}
+			if( ! written ) {
+				Log.debug("Fetch document -> {}", boundNode.getActionId());
+				if( streamToFile ) {
+					InputStream docStream = IntegrationAPIConnect.openDocument(client, boundNode);
+					recordInJournal(journal, DownloadJournal.State.FETCHED, boundNode, docStream != null, false);
+					written = streamDocToFS(docStream, boundNode, outputFolderName, outputFormat, deleteAfterFetch);
+				} else {
+					String xmlResponse = IntegrationAPIConnect.fetchDocument(client, boundNode);
+					recordInJournal(journal, DownloadJournal.State.FETCHED, boundNode, ! xmlResponse.isEmpty(), false);
+					written = ! xmlResponse.isEmpty() && printDocToFS(xmlResponse, boundNode, outputFolderName, outputFormat, deleteAfterFetch);
+				}
+				//Make sure the record is on disk before the document is deleted from the outbox
+				recordInJournal(journal, DownloadJournal.State.WRITTEN, boundNode, written, deleteAfterFetch);
+			}
+			if( deleteAfterFetch && written && deleteStage != null ) {
+				deleteStage.submit(boundNode);
+				return "Returned " + boundNode.getMessageUid() + " - delete queued";
+			}
+			if( deleteAfterFetch && written ) {
+				boolean deleted = IntegrationAPIConnect.deleteDocument( client, boundNode );
+				recordInJournal(journal, DownloadJournal.State.DELETED, boundNode, deleted, false);
 			}
 			return "Returned " + boundNode.getMessageUid();
 		};
-		
-		//Execute requests concurrently
+	}
+	
+	/*
+	 * 	Open the download journal in the output folder unless useDownloadJournal is false
+	 * 	@Return	Return the journal, or null if it is turned off or cannot be opened
+	 */
+	public static DownloadJournal openJournal(Properties props, String outputFolder) {
+		String useJournal = props.getProperty(downloadJournalPropKey);
+		if(useJournal != null && ! Boolean.parseBoolean(useJournal)) {
+			return null;
+		}
+		try {
+			return new DownloadJournal(Paths.get(outputFolder));
+		} catch (IOException e) {
+			Log.warn("Cannot open download journal in {} - downloading without one: {}", outputFolder, e.getMessage());
+			return null;
+		}
+	}
+	
+	/*
+	 * 	Start the stage deletes are queued to, sized from deleteConcurrency and deleteBatchSize
+	 * 	@Return	Return the stage, or null if documents are not deleted or deleteConcurrency is 0 to delete inline
+	 */
+	public static DeleteStage openDeleteStage(Properties props, boolean deleteAfterFetch, InforAPIClient client, DownloadJournal journal) {
+		int concurrency = parseOptionalInt(props, deleteConcurrencyPropKey, client.getApiDefinition().getMaxConcurrentSessions());
+		if(! deleteAfterFetch || concurrency <= 0) {
+			return null;
+		}
+		return new DeleteStage(client, journal, concurrency, parseOptionalInt(props, deleteBatchSizePropKey, deleteBatchSizeDefault));
+	}
+	
+	/*
+	 * 	Wait for the deletes still queued, up to deleteStageDrainTimeoutMillis, and stop the stage
+	 */
+	static void closeDeleteStage(DeleteStage deleteStage) {
+		if(deleteStage == null) {
+			return;
+		}
 		try {
-			Common.executeCallableRequestsConcurrently(fetchDocFn, results, threadNums);
+			deleteStage.close(deleteStageDrainTimeoutMillis);
 		} catch (InterruptedException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (ExecutionException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private static int parseOptionalInt(Properties props, String key, int defaultVal) {
+		String s = props.getProperty(key);
+		if(s == null) {
+			return defaultVal;
+		}
+		try {
+			return Integer.parseInt(s.trim());
+		} catch(NumberFormatException e) {
+			System.err.println("Property " + key + " has invalid value of " + s + "; must be an integer ");
+			System.exit(-1);
+		}
+		return defaultVal;
+	}
+	
+	private static void closeJournal(DownloadJournal journal) {
+		if(journal == null) {
+			return;
+		}
+		try {
+			journal.close();
+		} catch (IOException e) {
+			Log.error("Cannot close download journal", e);
+		}
+	}
+	
+	/*
+	 * 	Append a state to the journal if there is one and the step it records succeeded
+	 */
+	private static void recordInJournal(DownloadJournal journal, DownloadJournal.State state, IntegrationQueryResultNode node,
+			boolean succeeded, boolean durable) {
+		if(journal == null || ! succeeded) {
+			return;
+		}
+		try {
+			journal.record(state, node, durable);
+		} catch (IOException e) {
+			Log.warn("Cannot record {} for {} in download journal: {}", state, node.getActionId(), e.getMessage());
 		}
 	}
 	
@@ -117,17 +323,103 @@ public class IntegrationApiDownloader {
 	 * 	Build filename from Integration Query Result Node
 	 */
 	public static void printDocToFS(String rawXmlStr, IntegrationQueryResultNode node, String folderPath) {
+		printDocToFS(rawXmlStr, node, folderPath, XmlFormatter.Format.PRETTY);
+	}
+	
+	/*
+	 * 	Same as above - pretty print the document first unless format is RAW
+	 * 	@Return	Return true if the whole document was written
+	 */
+	public static boolean printDocToFS(String rawXmlStr, IntegrationQueryResultNode node, String folderPath, XmlFormatter.Format format) {
+		return printDocToFS(rawXmlStr, node, folderPath, format, false);
+	}
+	
+	/*
+	 * 	Same as above - if durable, the file is forced to disk before returning, as it must be before an outbox delete
+	 * 	The document is written to a .part file and moved into place, so a failed write never leaves a truncated file
+	 */
+	public static boolean printDocToFS(String rawXmlStr, IntegrationQueryResultNode node, String folderPath, XmlFormatter.Format format, boolean durable) {
 		try {
-	    	String fileName = node.getDocType() + "-" + node.getActionId() + ".xml";
-	    	System.out.println("Write document " + node.getActionId() + " to file -> " + fileName );
-	    	String fullFilePath = folderPath + File.separator + fileName;
-	    	BufferedWriter writer = new BufferedWriter(new FileWriter(fullFilePath));
-	    	String prettyPrintXml = Common.prettyFormat(rawXmlStr);
-			writer.write(prettyPrintXml);
-			writer.close();
+	    	Path filePath = Paths.get(buildDocFilePath(node, folderPath));
+	    	Path partial = Common.partialFileFor(filePath);
+	    	String xmlToWrite = format == XmlFormatter.Format.RAW ? rawXmlStr : Common.prettyFormat(rawXmlStr);
+	    	long start = System.nanoTime();
+	    	FileOutputStream file = new FileOutputStream(partial.toFile());
+	    	long written;
+	    	try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(file))) {
+				writer.write(xmlToWrite);
+				writer.flush();
+				//Bytes as encoded to the file, not chars
+				written = file.getChannel().position();
+				if(durable) {
+					file.getChannel().force(false);
+				}
+	    	} catch (IOException e) {
+	    		Files.deleteIfExists(partial);
+	    		throw e;
+	    	}
+	    	Common.commitPartialFile(partial, filePath, durable);
+			IntegrationMetrics.recordDiskWrite(System.nanoTime() - start, written);
+			return true;
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			Log.error("Cannot write document " + node.getActionId(), e);
+		}
+		return false;
+	}
+	
+	/*
+	 * 	Stream a fetched document to a file without holding it in memory
+	 * 	RAW writes the document exactly as the server sent it; PRETTY indents it as it streams through
+	 * 	@Param	docStream	open stream of the fetched document, null if the fetch failed; always closed
+	 * 	@Return	Return true if the whole document was written
+	 */
+	public static boolean streamDocToFS(InputStream docStream, IntegrationQueryResultNode node, String folderPath, XmlFormatter.Format format) {
+		return streamDocToFS(docStream, node, folderPath, format, false);
+	}
+	
+	/*
+	 * 	Same as above - if durable, the file is forced to disk before returning, as it must be before an outbox delete
+	 */
+	public static boolean streamDocToFS(InputStream docStream, IntegrationQueryResultNode node, String folderPath, XmlFormatter.Format format, boolean durable) {
+		if(docStream == null) {
+			return false;
 		}
+		try (InputStream in = docStream) {
+			Path filePath = Paths.get(buildDocFilePath(node, folderPath));
+			if(format == XmlFormatter.Format.RAW) {
+				Common.streamToFile(in, filePath, durable);
+				return true;
+			}
+			Path partial = Common.partialFileFor(filePath);
+			try (FileChannel file = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+					OutputStream out = new BufferedOutputStream(Channels.newOutputStream(file), Common.transferBufferSize)) {
+				XmlFormatter.prettyFormat(in, out);
+				out.flush();
+				if(durable) {
+					file.force(false);
+				}
+			} catch (XMLStreamException | IOException e) {
+				Files.deleteIfExists(partial);
+				throw new IOException("Cannot format document " + node.getActionId(), e);
+			}
+			Common.commitPartialFile(partial, filePath, durable);
+			return true;
+		} catch (IOException e) {
+			Log.error("Cannot write document " + node.getActionId(), e);
+		}
+		return false;
+	}
+	
+	/*
+	 * 	Build filename from Integration Query Result Node
+	 */
+	private static String buildDocFilePath(IntegrationQueryResultNode node, String folderPath) {
+		String filePath = docFilePath(node, folderPath);
+		Log.debug("Write document {} to file -> {}", node.getActionId(), filePath);
+		return filePath;
+	}
+	
+	private static String docFilePath(IntegrationQueryResultNode node, String folderPath) {
+		return folderPath + File.separator + node.getDocType() + "-" + node.getActionId() + ".xml";
 	}
 }
\ No newline at end of file
@@ -3,8 +3,9 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.List;
+import java.util.Iterator;
 import java.util.Properties;
 import java.util.Scanner;
 import java.util.concurrent.ExecutionException;
@@ -17,18 +18,27 @@ import org.w3c.dom.ls.DOMImplementationLS;
 import org.w3c.dom.ls.LSSerializer;
 
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 
 import infor.api.integration.InforAPI;
+import infor.api.integration.InforAPIClient;
 import infor.api.integration.InforAPIDefinition;
 import infor.api.integration.IntegrationAPIConnect;
+import infor.api.integration.Log;
+import infor.api.integration.UploadStatusTracker;
 import infor.api.resources.IntegrationStatusResponse;
 import infor.api.resources.IntegrationUploadResponse;
 
 public class IntegrationApiUploader {
 	static final int threadNum = 5;
 	static final int messageUploaderFetchStatusInterval = 4000;
+	//pollForMessageStatus gives up after this many polls - 5 minutes at the interval above
+	static final int messageUploaderMaxStatusPolls = 75;
+	//Status tracker polls each message first after 1s, backing off by 1.5x up to 30s while it is in progress
+	static final int statusPollInitialInterval = 1000;
+	static final int statusPollMaxInterval = 30000;
+	static final double statusPollBackoff = 1.5;
+	//A message still not Completed or Failed this long after upload is no longer tracked
+	static final long statusPollTimeout = 30L * 60 * 1000;
 	static final String uploaderPropertyFileName = "uploader-config.properties";
 	static final String docToUploadPropKey = "docToUpload";
 	static final String docUploadNumber = "docUploadNumber";
@@ -36,9 +46,17 @@ public class IntegrationApiUploader {
 	static final String[] requiredProperties = { docType };
 	//Optional Property - if set, attempt to upload a folder of files to platform
 	static final String uploadDocumentFolderKey = "uploadFolderPath"; 
+	//Optional Property - files in the upload folder of at least this many bytes are streamed from disk rather than parsed
+	static final String streamUploadThresholdKey = "streamUploadThresholdBytes";
+	static final long defaultStreamUploadThreshold = 8L * 1024 * 1024;
+	//Optional Property - dom (default) parses folder files before upload, passthrough sends their bytes as they are
+	static final String uploadModeKey = "uploadMode";
+	static final String passthroughUploadMode = "passthrough";
+	//Optional Property - if true, check each file sent from disk is well formed XML first and skip it if not
+	static final String checkWellFormedKey = "checkWellFormed";
 	
 	public static void main(String args[]) {
-		System.out.println("Program Start...");
+		Log.info("Program Start...");
 		Properties uploaderProps = Common.loadPropertyFile(uploaderPropertyFileName);
 		validateProperties(uploaderProps);
 		Properties apiProps = Common.loadApiDefPropertyFile();
@@ -48,97 +66,132 @@ public class IntegrationApiUploader {
 		//	Two Modes
 		//	Either upload files within a folder or take one file l and upload that X times
 		String uploadAFolderPath = uploaderProps.getProperty(uploadDocumentFolderKey);
-		List<Document> docXMLsToUpload;
 		if(uploadAFolderPath != null) {
-			docXMLsToUpload = loadDocumentsToUploadFromFolder(uploadAFolderPath);
+			//Passthrough never parses a file, so it hands every file out as a Path to send from disk
+			boolean passthrough = passthroughUploadMode.equalsIgnoreCase(uploaderProps.getProperty(uploadModeKey));
+			long streamThreshold = passthrough ? 0 : parseStreamUploadThreshold(uploaderProps);
+			try (FolderDocumentSource folderSource = loadDocumentsToUploadFromFolder(uploadAFolderPath, inforApiDef, streamThreshold)) {
+				uploadXMLToIntegrationAPI(uploaderProps, folderSource, inforApiDef);
+				Log.info("{} files read from {}", folderSource.getFilesRead(), uploadAFolderPath);
+			}
 		} else {
 			validateGenericDocUploadProperties(uploaderProps);
-			docXMLsToUpload = buildDocsToUploadFromGenericOrderXml(uploaderProps);
+			uploadXMLToIntegrationAPI(uploaderProps, buildDocsToUploadFromGenericOrderXml(uploaderProps), inforApiDef);
 		}
-		Integer maxConcurrentSessions = inforApiDef.getMaxConcurrentSessions();
-		
-		uploadXMLToIntegrationAPI(uploaderProps, docXMLsToUpload, maxConcurrentSessions);
 	}
 	
 	/*
-	 * 	Upload a list of document to Infor Integration API
+	 * 	Upload documents to Infor Integration API as the iterator yields them
 	 * 	Delegate actually thread pool management and uploading to Common Class
+	 * 	Each uploaded message is handed to an UploadStatusTracker so the worker's session is free for the
+	 * 	next upload straight away; return once every message has Completed or Failed
 	 * 	@Param	uploaderProps		Properties defined by uploader property file
-	 * 	@Param	xmlDocsToUpload		List of Documents to upload to platform
+	 * 	@Param	xmlDocsToUpload		Documents, already serialized XML Strings, or Paths of XML files to stream,
+	 * 								to upload to platform - only pulled as workers free up
+	 * 	@Param	apiDef				Api definition; sizes the worker pool and concurrent sessions
+	 */
+	public static void uploadXMLToIntegrationAPI(Properties uploaderProps, Iterator<?> xmlDocsToUpload, InforAPIDefinition apiDef) {
+		uploadXMLToIntegrationAPI(uploaderProps, xmlDocsToUpload, InforAPI.getDefaultClient());
+	}
+	
+	/*
+	 * 	Same as above, but upload to the tenant client belongs to
 	 */
-	public static void uploadXMLToIntegrationAPI(Properties uploaderProps, List<Document> xmlDocsToUpload, Integer sessions) {
+	public static void uploadXMLToIntegrationAPI(Properties uploaderProps, Iterator<?> xmlDocsToUpload, InforAPIClient client) {
 		String docTypeForUpload = uploaderProps.getProperty(docType);
+		boolean checkWellFormed = Boolean.parseBoolean(uploaderProps.getProperty(checkWellFormedKey));
+		UploadStatusTracker statusTracker = new UploadStatusTracker(client, statusPollInitialInterval, statusPollMaxInterval, statusPollBackoff, statusPollTimeout);
+		statusTracker.addCompletionListener((messageId, status) -> {
+			Log.debug("Message Id is {} - {}", messageId, status);
+		});
 		ExecuteFunctionalInterface executeFunction = (Object [] objs) -> {
-			Document xmlDoc = (Document) objs[0];
-			String xmlStr = getStringFromDoc(xmlDoc);
-			ArrayList<IntegrationUploadResponse> uploadResponses = IntegrationAPIConnect.uploadDocument(xmlStr, docTypeForUpload);
+			ArrayList<IntegrationUploadResponse> uploadResponses;
+			if(objs[0] instanceof Path) {
+				if(checkWellFormed && ! FolderDocumentSource.isWellFormed((Path) objs[0])) {
+					return "Skipped " + objs[0] + " - not well formed XML";
+				}
+				uploadResponses = IntegrationAPIConnect.uploadDocument(client, (Path) objs[0], docTypeForUpload);
+			} else {
+				String xmlStr = objs[0] instanceof String ? (String) objs[0] : getStringFromDoc((Document) objs[0]);
+				uploadResponses = IntegrationAPIConnect.uploadDocument(client, xmlStr, docTypeForUpload);
+			}
+			if(uploadResponses.isEmpty()) {
+				return "Upload failed for a " + docTypeForUpload + " document";
+			}
 			IntegrationUploadResponse res1 = uploadResponses.get(0);
-			//Poll for message status until either FAILED OR COMPLETED
-			pollForMessageStatus(res1);
-			System.out.println(res1);
+			//Status is polled by the tracker until either FAILED OR COMPLETED
+			statusTracker.register(res1.getMessageId());
 			return res1.toString();
 		};
 		try {
-			Common.executeCallableRequestsConcurrently(executeFunction, xmlDocsToUpload, sessions);
+			Common.executeCallableRequestsConcurrently(executeFunction, xmlDocsToUpload, client.getApiDefinition(), Log::debug);
+			statusTracker.awaitAll();
 		} catch (InterruptedException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			Log.error("Upload interrupted", e);
 		} catch (ExecutionException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			Log.error("Upload failed", e);
+		} finally {
+			statusTracker.shutdown();
 		}
 	}
 	/*
-	 * 	
+	 * 	Open a lazy source over the files in a folder - files are parsed just in time, a bounded number
+	 * 	ahead of the upload workers, rather than all up front
+	 * 	@Param	folderPath	Folder of XML files to upload
+	 * 	@Param	apiDef		Api definition; the read-ahead is twice the number of concurrent sessions
+	 * 	@Param	streamThreshold	Files of at least this many bytes are streamed from disk rather than parsed
+	 * 	@Return	Return source of the folder's Documents - close it once the upload is done
 	 */
-	public static List<Document> loadDocumentsToUploadFromFolder(String folderPath) {
-		List<Document> myDocuments = new ArrayList<Document>();
+	public static FolderDocumentSource loadDocumentsToUploadFromFolder(String folderPath, InforAPIDefinition apiDef, long streamThreshold) {
 		File folderToUpload = new File(folderPath);
 		if(! (folderToUpload.exists() && folderToUpload.isDirectory())) {
 			System.err.println("Input folder " + folderPath + " cannot be found");
 			System.exit(-1);
 		}
-		Document d;
-		for(File f : folderToUpload.listFiles()) {
-			d = convertXMLFileToXMLDocument(f.getAbsolutePath());
-			myDocuments.add(d);
-		}
-		
-		return myDocuments;
+		return new FolderDocumentSource(folderToUpload.toPath(), apiDef.getSessionCapacity() * 2, streamThreshold);
 	}
 	
+	/*
+	 * 	Poll for one message's status on the calling thread until it is either FAILED OR COMPLETED
+	 * 	Stops early if the server rejects the status request, and after messageUploaderMaxStatusPolls polls
+	 * 	The uploader itself hands messages to an UploadStatusTracker instead
+	 */
 	public static void pollForMessageStatus(IntegrationUploadResponse servResponse) {
 		try {
-			boolean stopPolling = false;
-			while(! stopPolling) {
+			for(int poll = 1; ; poll++) {
 				IntegrationStatusResponse status = IntegrationAPIConnect.fetchDocumentStatus( servResponse.getMessageId() );
-				stopPolling = status.getState().equalsIgnoreCase(IntegrationStatusResponse.COMPLETE_STATUS) ||
-							  status.getState().equalsIgnoreCase(IntegrationStatusResponse.FAILED_STATUS);
+				if(status.isFinalState()) {
+					return;
+				}
+				if(status.isRejected() || poll >= messageUploaderMaxStatusPolls) {
+					Log.warn("Stopped polling message {} - {}, response code {}", servResponse.getMessageId(), status, status.getResponseCode());
+					return;
+				}
 				Thread.sleep(messageUploaderFetchStatusInterval);
 			}
 		} catch(Exception e) {
-			e.printStackTrace();
+			Log.error("Cannot poll status of message " + servResponse.getMessageId(), e);
 		}
 	}
 	
 	/*
 	 * 	Build variation of generic Order XML to Infor Platform based on property file
 	 * 	Each generic Order will have its poNumber incremented by 1 so each is considered unique
+	 * 	The template is parsed once and each Order XML is only generated when a worker is ready to upload it
 	 * 	@Param props	property defined by Uploader property file
-	 * 	@Return	Return List of XML Documents
+	 * 	@Return	Return generator of serialized Order XMLs
 	 */
-	public static List<Document> buildDocsToUploadFromGenericOrderXml(Properties props) {
+	public static GenericOrderTemplate buildDocsToUploadFromGenericOrderXml(Properties props) {
 		Document genericOrderXmlDoc = convertXMLFileToXMLDocument( props.getProperty(docToUploadPropKey) );
 		Node poNode = findPoNumberNode(genericOrderXmlDoc);
-		System.out.println( poNode.getTextContent() );
+		if(poNode == null) {
+			System.err.println("Document " + props.getProperty(docToUploadPropKey) + " has no poNumber to make unique");
+			System.exit(-1);
+		}
+		Log.info("Generating orders from poNumber {}", poNode.getTextContent());
 		
 		int uploadDocNum = Integer.parseInt(props.getProperty(docUploadNumber));
-		List<Document> docXMLsToUpload = new ArrayList<Document>();
-		for(int i = 0; i < uploadDocNum; i++) {
-			Document buildXml = copyAndIncrementOrderXML(genericOrderXmlDoc, i);
-			docXMLsToUpload.add(buildXml);
-		}
-		return docXMLsToUpload;
+		return new GenericOrderTemplate(genericOrderXmlDoc, poNode, uploadDocNum);
 	}
 	
 	/*
@@ -152,31 +205,6 @@ public class IntegrationApiUploader {
 	    return lsSerializer.writeToString(doc);
 	}
 	
-	/*
-	 * 	Clone generic Order Document and increment the order poNumber to make that field unique for upload
-	 * 	@Param	genericOrderXmlDoc	Infor XML Order Document
-	 * 	@Param	add					increment poNumber by this value
-	 * 	@Return	Return cloned and in theory unique Order XML Document
-	 */
-	private static Document copyAndIncrementOrderXML(Document genericOrderXmlDoc, int add) {		
-		DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-		Document copiedDocument;
-		try {
-			DocumentBuilder db = dbf.newDocumentBuilder();
-			copiedDocument = (Document) genericOrderXmlDoc.cloneNode(true);
-	        Node poNode = findPoNumberNode(copiedDocument);
-	        String textContent = poNode.getTextContent() + "-XXX" + add;
-	        System.out.println("Po Number would be - " + textContent);
-	        poNode.setTextContent(textContent);
-	        return copiedDocument;
-		} catch (ParserConfigurationException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-		
-        return null;
-	}
-	
 	/*
 	 * 	Find poNumber from Document Order Representation
 	 * 	@Param	inforOrder	Document of InforNexus Order
@@ -194,14 +222,11 @@ public class IntegrationApiUploader {
 	 */
 	private static Document convertXMLFileToXMLDocument(String filePath) 
     {
-        //Parser that produces DOM object trees from XML content
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-         
         //API to obtain DOM Document instance
         DocumentBuilder builder = null;
         try {
-            //Create DocumentBuilder with default configuration
-            builder = factory.newDocumentBuilder();
+            //Create DocumentBuilder from the shared factory
+            builder = FolderDocumentSource.newDocumentBuilder();
              
             //Parse the content to Document object
             Document doc = builder.parse(new File(filePath));
@@ -238,6 +263,23 @@ public class IntegrationApiUploader {
 		}
 	}
 	
+	/*
+	 * 	@Return	Return streamUploadThresholdBytes, or the default if it is not set - exit if it is not a valid number
+	 */
+	private static long parseStreamUploadThreshold(Properties props) {
+		String threshold = props.getProperty(streamUploadThresholdKey);
+		if(threshold == null) {
+			return defaultStreamUploadThreshold;
+		}
+		try {
+			return Long.parseLong(threshold.trim());
+		} catch(NumberFormatException e) {
+			System.out.println("Property " + streamUploadThresholdKey + " must be a valid number of bytes");
+			System.exit(-1);
+		}
+		return defaultStreamUploadThreshold;
+	}
+	
 	/*
 	 * 	Validate Properties based on requiredProperties array - exit program if missing a required
 	 * 	tool property
@@ -0,0 +1,195 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import infor.api.integration.InforAPI;
+import infor.api.integration.InforAPIClient;
+import infor.api.integration.InforAPIClientPool;
+import infor.api.integration.InforAPIDefinition;
+import infor.api.integration.Log;
+
+/*
+ * 	Drain the outboxes of many tenants from one process
+ *
+ * 	config.properties holds the settings every tenant shares, plus
+ * 		tenantConfigFiles			comma separated property files, one per tenant - each holds that tenant's
+ * 									datakey, accessKey, user and secret, and may override any other api property
+ * 									(host, maxConcurrentSessions ...) and outboxOutputFolder
+ * 		maxTotalConcurrentSessions	most sessions open at once across all tenants; defaults to the sum of
+ * 									the tenants' own limits
+ * 	downloader-config.properties is read as for the integrationApiDownloader and applies to every tenant
+ * 	Each tenant's documents go to outboxOutputFolder/<tenant file name> unless its file sets a folder of its own,
+ * 	with a download journal and delete stage of its own
+ *
+ * 	All tenants share one HTTP transport, scheduler and the global session budget through an InforAPIClientPool;
+ * 	each runs the downloader on its own thread against its own InforAPIClient, so one slow or throttled
+ * 	tenant only holds back its own outbox
+ */
+public class MultiTenantDownloader {
+	public static final String tenantConfigFilesPropKey = "tenantConfigFiles";
+
+	public static void main(String args[]) throws InterruptedException {
+		Log.info("Program Start...");
+		long start = System.nanoTime();
+		Properties apiProps = Common.loadApiDefPropertyFile();
+		String tenantFiles = apiProps.getProperty(tenantConfigFilesPropKey);
+		if(tenantFiles == null || tenantFiles.trim().isEmpty()) {
+			System.err.println("Property " + tenantConfigFilesPropKey + " must list at least one tenant property file");
+			System.exit(-1);
+		}
+		Properties downloaderProperties = IntegrationApiDownloader.definePropertiesFromPropFile();
+		boolean deleteAfterFetch = Boolean.parseBoolean( downloaderProperties.getProperty(IntegrationApiDownloader.doDeletePropKey));
+		boolean streamToFile = Boolean.parseBoolean( downloaderProperties.getProperty(IntegrationApiDownloader.streamFetchPropKey));
+		XmlFormatter.Format outputFormat = XmlFormatter.parseFormat(downloaderProperties.getProperty(IntegrationApiDownloader.outputFormatPropKey),
+				streamToFile ? XmlFormatter.Format.RAW : XmlFormatter.Format.PRETTY);
+		int maxPollSeconds = Integer.parseInt(downloaderProperties.getProperty(IntegrationApiDownloader.outboxPollPropKey));
+		int minPollSeconds = Integer.parseInt(downloaderProperties.getProperty(IntegrationApiDownloader.minOutboxPollPropKey,
+				Integer.toString(IntegrationApiDownloader.minOutboxPollIntervalDefault)));
+		boolean daemonMode = deleteAfterFetch && Boolean.parseBoolean(downloaderProperties.getProperty(IntegrationApiDownloader.daemonModePropKey));
+
+		List<Tenant> tenants = new ArrayList<Tenant>();
+		int totalSessions = 0;
+		for(String tenantFile : tenantFiles.split(",")) {
+			Tenant tenant = new Tenant(tenantFile.trim(), apiProps, downloaderProperties);
+			totalSessions += tenant.apiDef.getSessionCapacity();
+			tenants.add(tenant);
+		}
+		//Only the process and transport settings are read from the shared file - credentials are per tenant
+		InforAPIDefinition sharedDef = new InforAPIDefinition(apiProps, false);
+		InforAPI.configureProcess(sharedDef);
+		Integer maxTotalSessions = sharedDef.getMaxTotalConcurrentSessions();
+		InforAPIClientPool pool = new InforAPIClientPool(sharedDef, maxTotalSessions != null ? maxTotalSessions : totalSessions);
+		Log.info("Downloading {} tenants with at most {} sessions in total", tenants.size(), pool.getMaxTotalSessions());
+
+		List<Thread> threads = new ArrayList<Thread>();
+		List<DownloaderDaemon> daemons = new ArrayList<DownloaderDaemon>();
+		List<DownloadJournal> journals = new ArrayList<DownloadJournal>();
+		List<DeleteStage> deleteStages = new ArrayList<DeleteStage>();
+		for(Tenant tenant : tenants) {
+			InforAPIClient client = pool.newClient(tenant.apiDef);
+			DownloadJournal journal = IntegrationApiDownloader.openJournal(downloaderProperties, tenant.outputFolder);
+			journals.add(journal);
+			DeleteStage deleteStage = IntegrationApiDownloader.openDeleteStage(downloaderProperties, deleteAfterFetch, client, journal);
+			deleteStages.add(deleteStage);
+			Runnable download;
+			if(daemonMode) {
+				DownloaderDaemon daemon = new DownloaderDaemon(IntegrationApiDownloader.buildFetchDocFunction(client, deleteAfterFetch,
+						streamToFile, outputFormat, tenant.outputFolder, journal, deleteStage), client, minPollSeconds, maxPollSeconds);
+				daemons.add(daemon);
+				download = daemon::run;
+			} else {
+				download = () -> {
+					try {
+						do {
+							IntegrationApiDownloader.runIntegrationApiDownloader(deleteAfterFetch, streamToFile, outputFormat, tenant.outputFolder, journal, deleteStage, client);
+							if(deleteAfterFetch) {
+								Thread.sleep(maxPollSeconds * 1000L);
+							}
+						} while(deleteAfterFetch);
+					} catch (InterruptedException e) {
+						Log.info("Stopped downloading tenant {}", tenant.name);
+					}
+				};
+			}
+			Thread t = new Thread(download, "tenant-" + tenant.name);
+			t.start();
+			threads.add(t);
+		}
+		if(daemonMode) {
+			//Stop every tenant's poll loop at once on Ctrl-C or SIGTERM, let the documents and deletes in flight
+			//finish, then flush the journals
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				List<Thread> stopping = new ArrayList<Thread>();
+				for(int i = 0; i < daemons.size(); i++) {
+					DownloaderDaemon daemon = daemons.get(i);
+					DeleteStage deleteStage = deleteStages.get(i);
+					Thread stop = new Thread(() -> {
+						try {
+							daemon.stop(IntegrationApiDownloader.daemonShutdownTimeoutMillis);
+							IntegrationApiDownloader.closeDeleteStage(deleteStage);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					});
+					stop.start();
+					stopping.add(stop);
+				}
+				try {
+					for(Thread stop : stopping) {
+						stop.join();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				closeJournals(journals);
+				Log.flush(1000);
+			}, "downloader-shutdown"));
+		}
+		for(Thread t : threads) {
+			t.join();
+		}
+		if(daemonMode) {
+			//Poll loops only return once the shutdown hook has stopped them - it finishes the work in flight
+			return;
+		}
+		closeJournals(journals);
+		pool.shutdown();
+
+		long finish = System.nanoTime();
+		double msTimeElapsed = (( finish - start ) / 1e6);
+		Log.info("Time elapsed {}", msTimeElapsed);
+		Log.flush(1000);
+	}
+
+	private static void closeJournals(List<DownloadJournal> journals) {
+		for(DownloadJournal journal : journals) {
+			if(journal == null) {
+				continue;
+			}
+			try {
+				journal.close();
+			} catch (IOException e) {
+				Log.error("Cannot close download journal", e);
+			}
+		}
+	}
+
+	/*
+	 * 	One tenant's api definition and output folder
+	 */
+	private static class Tenant {
+		final String name;
+		final InforAPIDefinition apiDef;
+		final String outputFolder;
+
+		/*
+		 * 	@Param	tenantFile			property file of the tenant
+		 * 	@Param	sharedApiProps		config.properties - the tenant file's properties override these
+		 * 	@Param	downloaderProps		downloader-config.properties - its outboxOutputFolder is the parent of the tenant's folder
+		 */
+		Tenant(String tenantFile, Properties sharedApiProps, Properties downloaderProps) {
+			String fileName = new File(tenantFile).getName();
+			this.name = fileName.endsWith(".properties") ? fileName.substring(0, fileName.length() - ".properties".length()) : fileName;
+			Properties tenantProps = Common.loadPropertyFile(tenantFile);
+			Properties props = new Properties();
+			props.putAll(sharedApiProps);
+			props.putAll(tenantProps);
+			this.apiDef = new InforAPIDefinition(props);
+			String folder = tenantProps.getProperty(IntegrationApiDownloader.outputFolderKey);
+			if(folder == null) {
+				folder = downloaderProps.getProperty(IntegrationApiDownloader.outputFolderKey) + File.separator + this.name;
+			}
+			try {
+				Files.createDirectories(Paths.get(folder));
+			} catch (IOException e) {
+				System.err.println("Cannot create output folder " + folder + " for tenant " + this.name);
+				System.exit(-1);
+			}
+			this.outputFolder = folder;
+		}
+	}
+}
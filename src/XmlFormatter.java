@@ -0,0 +1,223 @@
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Characters;
+import javax.xml.stream.events.Comment;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.ProcessingInstruction;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+/*
+ * 	Format XML documents written by the integrationApiDownloader
+ * 		PRETTY	indent the document so it is human readable
+ * 		RAW		leave the document exactly as the server sent it
+ * 
+ * 	In-memory documents are indented by an identity Transformer. Building a TransformerFactory and a
+ * 	Transformer is far more expensive than using one, so both are created once and each Transformer is
+ * 	handed to one thread at a time from a pool
+ * 	Streamed documents are indented event by event from a StAX reader to a StAX writer, so a document
+ * 	of any size is formatted in constant memory
+ */
+public class XmlFormatter {
+	public enum Format { PRETTY, RAW }
+	
+	static final int defaultIndent = 2;
+	static final String indentAmountKey = "{http://xml.apache.org/xslt}indent-amount";
+	
+	private static final TransformerFactory transformerFactory = TransformerFactory.newInstance();
+	private static final ConcurrentLinkedQueue<Transformer> idleTransformers = new ConcurrentLinkedQueue<Transformer>();
+	private static final XMLInputFactory xmlInputFactory = newXmlInputFactory();
+	private static final XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newInstance();
+	
+	/*
+	 * 	Parse a format property value - anything other than raw is PRETTY
+	 * 	@Param	value		property value, may be null
+	 * 	@Param	defaultVal	format to use if value is null
+	 */
+	public static Format parseFormat(String value, Format defaultVal) {
+		if(value == null) {
+			return defaultVal;
+		}
+		return value.equalsIgnoreCase("raw") ? Format.RAW : Format.PRETTY;
+	}
+	
+	/*
+	 * 	Pretty print XML string using indent with a pooled Transformer
+	 * 
+	 * 	@Return	return a string which once printed will be human readable
+	 */
+	public static String prettyFormat(String input, int indent) {
+		Transformer transformer = idleTransformers.poll();
+		try {
+			if(transformer == null) {
+				transformer = newIndentingTransformer();
+			}
+			transformer.setOutputProperty(indentAmountKey, Integer.toString(indent));
+			StringWriter stringWriter = new StringWriter();
+			transformer.transform(new StreamSource(new StringReader(input)), new StreamResult(stringWriter));
+			idleTransformers.offer(transformer);
+			return stringWriter.toString();
+		} catch (Exception e) {
+			//Don't return a transformer in an unknown state to the pool
+			throw new RuntimeException(e); // simple exception handling, please review it
+		}
+	}
+	
+	/*
+	 * 	Pretty print an XML stream using indent, one StAX event at a time
+	 * 	Whitespace-only text between markup is dropped and replaced with a newline and indentation; whitespace
+	 * 	that is the whole content of an element is data, and is kept
+	 * 
+	 * 	@Param	in		xml document to read; not closed
+	 * 	@Param	out		receives the indented document encoded as UTF-8; flushed but not closed
+	 */
+	public static void prettyFormat(InputStream in, OutputStream out, int indent) throws XMLStreamException {
+		XMLEventReader reader = xmlInputFactory.createXMLEventReader(in);
+		XMLStreamWriter writer = xmlOutputFactory.createXMLStreamWriter(out, "UTF-8");
+		try {
+			writer.writeStartDocument("UTF-8", "1.0");
+			int depth = 0;
+			boolean lastWasEnd = false;
+			boolean lastWasStart = false;
+			while(reader.hasNext()) {
+				XMLEvent event = reader.nextEvent();
+				switch(event.getEventType()) {
+					case XMLStreamConstants.START_ELEMENT:
+						writeIndent(writer, depth, indent);
+						boolean empty = reader.peek() != null && reader.peek().isEndElement();
+						writeStartElement(writer, event.asStartElement(), empty);
+						if(empty) {
+							reader.nextEvent();
+							lastWasEnd = true;
+						} else {
+							depth++;
+							lastWasEnd = false;
+						}
+						lastWasStart = ! empty;
+						continue;
+					case XMLStreamConstants.END_ELEMENT:
+						depth--;
+						if(lastWasEnd) {
+							writeIndent(writer, depth, indent);
+						}
+						writer.writeEndElement();
+						lastWasEnd = true;
+						break;
+					case XMLStreamConstants.CHARACTERS:
+					case XMLStreamConstants.SPACE:
+						Characters text = event.asCharacters();
+						//Between a start tag and its own end tag whitespace is the element's value, e.g. <middleName> </middleName>
+						boolean onlyContent = lastWasStart && reader.peek() != null && reader.peek().isEndElement();
+						if(! text.isWhiteSpace() || onlyContent) {
+							writer.writeCharacters(text.getData());
+							lastWasEnd = false;
+						}
+						break;
+					case XMLStreamConstants.CDATA:
+						writer.writeCData(event.asCharacters().getData());
+						lastWasEnd = false;
+						break;
+					case XMLStreamConstants.COMMENT:
+						writeIndent(writer, depth, indent);
+						writer.writeComment(((Comment) event).getText());
+						lastWasEnd = true;
+						break;
+					case XMLStreamConstants.PROCESSING_INSTRUCTION:
+						ProcessingInstruction pi = (ProcessingInstruction) event;
+						writeIndent(writer, depth, indent);
+						writer.writeProcessingInstruction(pi.getTarget(), pi.getData());
+						lastWasEnd = true;
+						break;
+					default:
+						//Start/end document and DTD events - declaration is written above
+						break;
+				}
+				lastWasStart = false;
+			}
+			writer.writeCharacters("\n");
+			writer.writeEndDocument();
+			writer.flush();
+		} finally {
+			reader.close();
+			writer.close();
+		}
+	}
+	
+	/*
+	 * 	Default indent is 2 - run pretty function above
+	 */
+	public static void prettyFormat(InputStream in, OutputStream out) throws XMLStreamException {
+		prettyFormat(in, out, defaultIndent);
+	}
+	
+	private static void writeStartElement(XMLStreamWriter writer, StartElement element, boolean empty) throws XMLStreamException {
+		String prefix = element.getName().getPrefix();
+		String localName = element.getName().getLocalPart();
+		String namespaceUri = element.getName().getNamespaceURI();
+		if(empty) {
+			writer.writeEmptyElement(prefix, localName, namespaceUri);
+		} else {
+			writer.writeStartElement(prefix, localName, namespaceUri);
+		}
+		for(Iterator<?> it = element.getNamespaces(); it.hasNext(); ) {
+			Namespace ns = (Namespace) it.next();
+			if(ns.isDefaultNamespaceDeclaration()) {
+				writer.writeDefaultNamespace(ns.getNamespaceURI());
+			} else {
+				writer.writeNamespace(ns.getPrefix(), ns.getNamespaceURI());
+			}
+		}
+		for(Iterator<?> it = element.getAttributes(); it.hasNext(); ) {
+			Attribute attr = (Attribute) it.next();
+			String attrNamespace = attr.getName().getNamespaceURI();
+			if(attrNamespace == null || attrNamespace.isEmpty()) {
+				writer.writeAttribute(attr.getName().getLocalPart(), attr.getValue());
+			} else {
+				writer.writeAttribute(attr.getName().getPrefix(), attrNamespace, attr.getName().getLocalPart(), attr.getValue());
+			}
+		}
+	}
+	
+	private static void writeIndent(XMLStreamWriter writer, int depth, int indent) throws XMLStreamException {
+		StringBuilder whitespace = new StringBuilder(1 + depth * indent).append('\n');
+		for(int i = 0; i < depth * indent; i++) {
+			whitespace.append(' ');
+		}
+		writer.writeCharacters(whitespace.toString());
+	}
+	
+	private static Transformer newIndentingTransformer() throws TransformerConfigurationException {
+		Transformer transformer;
+		synchronized(transformerFactory) {
+			transformer = transformerFactory.newTransformer();
+		}
+		transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+		return transformer;
+	}
+	
+	private static XMLInputFactory newXmlInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		return factory;
+	}
+}
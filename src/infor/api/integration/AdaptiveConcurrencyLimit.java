@@ -0,0 +1,125 @@
+package infor.api.integration;
+import java.util.EnumMap;
+import java.util.Map;
+
+import infor.api.integration.IntegrationMetrics.Endpoint;
+
+/*
+ * 	Adjust the number of requests allowed in flight from what the platform reports back (AIMD)
+ * 		Additive increase		once a full limit's worth of requests has succeeded at normal latency, allow one more
+ * 		Multiplicative decrease	halve the limit when the platform throttles (429), fails (5xx) or times out, and
+ * 								cut it by a tenth when recent latency climbs well above its long run average
+ * 	Latency is averaged per endpoint, since a status poll and an outbox list take very different times, and
+ * 	only for requests without a body - an upload's latency includes sending its payload, so says more
+ * 	about the payload's size than about congestion. Drops count whatever the request
+ * 	After a decrease no further decrease happens until another limit's worth of requests has completed, so
+ * 	one burst of errors from requests already in flight only counts once
+ * 	The limit always stays between minLimit and maxLimit and is applied to a SessionLimiter
+ */
+public class AdaptiveConcurrencyLimit {
+	static final double DROP_BACKOFF_RATIO = 0.5;
+	static final double LATENCY_BACKOFF_RATIO = 0.9;
+	//Recent latency above this multiple of the long run average is treated as congestion
+	static final double LATENCY_TOLERANCE = 2.0;
+	static final double SHORT_SMOOTHING = 0.2;
+	static final double LONG_SMOOTHING = 0.02;
+	
+	private final SessionLimiter limiter;
+	private final int minLimit;
+	private final int maxLimit;
+	private int limit;
+	private final Map<Endpoint, LatencyBaseline> baselines = new EnumMap<Endpoint, LatencyBaseline>(Endpoint.class);
+	private int samplesSinceChange = 0;
+	private boolean recentlyDecreased = false;
+	
+	public AdaptiveConcurrencyLimit(SessionLimiter limiter, int minLimit, int maxLimit) {
+		this.limiter = limiter;
+		this.minLimit = Math.max(1, minLimit);
+		this.maxLimit = Math.max(this.minLimit, maxLimit);
+		this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, limiter.getLimit()));
+		limiter.setLimit(this.limit);
+	}
+	
+	/*
+	 * 	Record a request without a body the platform answered normally
+	 * 	@Param	endpoint		endpoint the request was sent to; its latency is only compared with that endpoint's
+	 * 	@Param	latencyNanos	time from sending the request to receiving the response headers
+	 */
+	public synchronized void onSuccess(Endpoint endpoint, long latencyNanos) {
+		LatencyBaseline baseline = this.baselines.computeIfAbsent(endpoint, (e) -> new LatencyBaseline());
+		baseline.record(latencyNanos);
+		this.samplesSinceChange++;
+		if(baseline.isCongested()) {
+			decrease(LATENCY_BACKOFF_RATIO);
+		} else {
+			increaseIfDue();
+		}
+	}
+	
+	/*
+	 * 	Record a request the platform answered normally whose latency is not a sign of congestion - one with a body
+	 */
+	public synchronized void onSuccess() {
+		this.samplesSinceChange++;
+		increaseIfDue();
+	}
+	
+	/*
+	 * 	Record a request the platform throttled, failed or that timed out
+	 */
+	public synchronized void onDropped() {
+		this.samplesSinceChange++;
+		decrease(DROP_BACKOFF_RATIO);
+	}
+	
+	public synchronized int getLimit() {
+		return this.limit;
+	}
+	
+	private void increaseIfDue() {
+		if(this.samplesSinceChange >= this.limit) {
+			this.recentlyDecreased = false;
+			changeLimit(this.limit + 1);
+		}
+	}
+	
+	private void decrease(double ratio) {
+		if(this.recentlyDecreased && this.samplesSinceChange < this.limit) {
+			return;
+		}
+		this.recentlyDecreased = true;
+		changeLimit((int) (this.limit * ratio));
+	}
+	
+	private void changeLimit(int newLimit) {
+		newLimit = Math.min(this.maxLimit, Math.max(this.minLimit, newLimit));
+		this.samplesSinceChange = 0;
+		if(newLimit != this.limit) {
+			Log.info("Concurrent session limit changed from {} to {}", this.limit, newLimit);
+			this.limit = newLimit;
+			this.limiter.setLimit(newLimit);
+		}
+	}
+	
+	/*
+	 * 	Recent and long run average latency of one endpoint
+	 */
+	private static class LatencyBaseline {
+		private double shortLatencyNanos = 0;
+		private double longLatencyNanos = 0;
+		
+		void record(long latencyNanos) {
+			if(this.longLatencyNanos == 0) {
+				this.shortLatencyNanos = latencyNanos;
+				this.longLatencyNanos = latencyNanos;
+			} else {
+				this.shortLatencyNanos += SHORT_SMOOTHING * (latencyNanos - this.shortLatencyNanos);
+				this.longLatencyNanos += LONG_SMOOTHING * (latencyNanos - this.longLatencyNanos);
+			}
+		}
+		
+		boolean isCongested() {
+			return this.shortLatencyNanos > LATENCY_TOLERANCE * this.longLatencyNanos;
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package infor.api.integration;
+
+/*
+ * 	Stop every worker from sending requests to a host that keeps failing
+ * 		CLOSED		requests flow; failureThreshold retryable failures in a row open the breaker
+ * 		OPEN		no requests are sent until openMillis have passed
+ * 		HALF_OPEN	a single trial request is let through; success closes the breaker, failure opens it again
+ * 	Callers ask millisUntilAllowed before each attempt and wait that long instead of sending, then report
+ * 	the attempt's outcome - or, if it was never sent, that it was abandoned
+ */
+public class CircuitBreaker {
+	enum State { CLOSED, OPEN, HALF_OPEN }
+	//How long callers wait while another caller's trial request is in flight
+	static final long TRIAL_WAIT_MILLIS = 1000;
+	
+	private final int failureThreshold;
+	private final long openMillis;
+	private State state = State.CLOSED;
+	private int consecutiveFailures = 0;
+	private long openedAt = 0;
+	private boolean trialInFlight = false;
+	
+	public CircuitBreaker(int failureThreshold, long openMillis) {
+		this.failureThreshold = Math.max(1, failureThreshold);
+		this.openMillis = openMillis;
+	}
+	
+	/*
+	 * 	@Return	Return 0 if a request may be sent now, otherwise milliseconds to wait before asking again
+	 */
+	public synchronized long millisUntilAllowed() {
+		if(this.state == State.OPEN) {
+			long remaining = this.openedAt + this.openMillis - System.currentTimeMillis();
+			if(remaining > 0) {
+				return remaining;
+			}
+			this.state = State.HALF_OPEN;
+			this.trialInFlight = false;
+		}
+		if(this.state == State.HALF_OPEN) {
+			if(this.trialInFlight) {
+				return TRIAL_WAIT_MILLIS;
+			}
+			this.trialInFlight = true;
+		}
+		return 0;
+	}
+	
+	public synchronized void onSuccess() {
+		if(this.state != State.CLOSED) {
+			Log.info("Circuit breaker closed - host is responding again");
+		}
+		this.state = State.CLOSED;
+		this.consecutiveFailures = 0;
+		this.trialInFlight = false;
+	}
+	
+	public synchronized void onFailure() {
+		this.consecutiveFailures++;
+		if(this.state == State.HALF_OPEN || (this.state == State.CLOSED && this.consecutiveFailures >= this.failureThreshold)) {
+			Log.warn("Circuit breaker opened after {} failures - pausing requests for {}ms", this.consecutiveFailures, this.openMillis);
+			this.state = State.OPEN;
+			this.openedAt = System.currentTimeMillis();
+			this.trialInFlight = false;
+		}
+	}
+	
+	/*
+	 * 	An attempt millisUntilAllowed let through ended without reaching the host - interrupted, or its request
+	 * 	could not be built - so it says nothing about the host; if it was the trial, let another caller send one
+	 */
+	public synchronized void onAbandoned() {
+		if(this.state == State.HALF_OPEN) {
+			this.trialInFlight = false;
+		}
+	}
+	
+	public synchronized boolean isOpen() {
+		return this.state == State.OPEN;
+	}
+}
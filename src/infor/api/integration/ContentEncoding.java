@@ -0,0 +1,213 @@
+package infor.api.integration;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/*
+ * 	gzip and deflate content codings for Infor API requests and responses
+ *
+ * 	Responses are decompressed as they are read, so a compressed document streams to disk through the same
+ * 	path as an uncompressed one. A response stream is only wrapped once it is first read - the HttpClient
+ * 	hands the body over as soon as the headers arrive and reading the gzip header at that point would
+ * 	block one of its threads
+ * 	Request bodies are compressed in memory for a String, or on the fly as the body is sent for a file
+ * 	The response handlers count each body toward the endpoint's metrics both as received on the wire and
+ * 	after decompression
+ */
+public class ContentEncoding {
+	public static final String GZIP = "gzip";
+	public static final String DEFLATE = "deflate";
+	public static final String ACCEPT_ENCODING = GZIP + ", " + DEFLATE;
+
+	/*
+	 * 	@Param	uri		request uri the body's bytes are counted against
+	 * 	@Return	Return handler that reads a response body, decompressed if need be, as a UTF-8 String
+	 */
+	static HttpResponse.BodyHandler<String> ofString(String uri) {
+		return (responseInfo) -> {
+			String encoding = contentEncoding(responseInfo);
+			return BodySubscribers.mapping(BodySubscribers.ofByteArray(), (bytes) -> {
+				IntegrationMetrics.recordWireBytesReceived(uri, bytes.length);
+				byte[] body = bytes;
+				if(encoding != null) {
+					try (InputStream in = decode(new ByteArrayInputStream(bytes), encoding)) {
+						body = in.readAllBytes();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+				IntegrationMetrics.recordBytesReceived(uri, body.length);
+				return new String(body, StandardCharsets.UTF_8);
+			});
+		};
+	}
+
+	/*
+	 * 	The body's wire bytes are counted as it is read; its decompressed bytes are left to the reader to count
+	 * 
+	 * 	@Param	uri		request uri the body's bytes are counted against
+	 * 	@Return	Return handler that exposes a response body, decompressed as it is read if need be, as a stream
+	 */
+	static HttpResponse.BodyHandler<InputStream> ofInputStream(String uri) {
+		return (responseInfo) -> {
+			String encoding = contentEncoding(responseInfo);
+			return BodySubscribers.mapping(BodySubscribers.ofInputStream(), (in) -> {
+				InputStream wire = new IntegrationMetrics.MeteredInputStream(in, (bytes) -> IntegrationMetrics.recordWireBytesReceived(uri, bytes));
+				return encoding == null ? wire : decode(wire, encoding);
+			});
+		};
+	}
+
+	/*
+	 * 	Wrap a compressed stream so it is decompressed as it is read
+	 * 	Deflate is meant to be zlib wrapped, but some servers send raw deflate data - both are accepted
+	 *
+	 * 	@Param	in			compressed stream
+	 * 	@Param	encoding	gzip or deflate
+	 * 	@Return	Return stream of the decompressed bytes; nothing is read from in until it is first read
+	 */
+	public static InputStream decode(InputStream in, String encoding) {
+		return new FilterInputStream(in) {
+			private boolean decoding;
+
+			@Override
+			public int read() throws IOException {
+				startDecoding();
+				return super.read();
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				startDecoding();
+				return super.read(b, off, len);
+			}
+
+			@Override
+			public long skip(long n) throws IOException {
+				startDecoding();
+				return super.skip(n);
+			}
+
+			@Override
+			public int available() throws IOException {
+				return this.decoding ? super.available() : 0;
+			}
+
+			private void startDecoding() throws IOException {
+				if(! this.decoding) {
+					this.decoding = true;
+					this.in = GZIP.equals(encoding) ? new GZIPInputStream(this.in, 8192) : inflating(this.in);
+				}
+			}
+		};
+	}
+
+	private static InputStream inflating(InputStream in) throws IOException {
+		PushbackInputStream peek = new PushbackInputStream(in, 2);
+		int b0 = peek.read();
+		int b1 = b0 == -1 ? -1 : peek.read();
+		if(b1 != -1) {
+			peek.unread(b1);
+		}
+		if(b0 != -1) {
+			peek.unread(b0);
+		}
+		//A zlib header has compression method 8 in its low nibble and is a multiple of 31 read as a 16 bit number
+		boolean zlib = b1 != -1 && (b0 & 0x0F) == 8 && ((b0 << 8) | b1) % 31 == 0;
+		return new InflaterInputStream(peek, new Inflater(! zlib), 8192);
+	}
+
+	/*
+	 * 	Compress a payload for sending
+	 *
+	 * 	@Param	payload		bytes to compress
+	 * 	@Param	encoding	gzip or deflate
+	 * 	@Return	Return the compressed bytes
+	 */
+	public static byte[] encode(byte[] payload, String encoding) throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, payload.length / 8));
+		try (OutputStream out = GZIP.equals(encoding) ? new GZIPOutputStream(compressed) : new DeflaterOutputStream(compressed)) {
+			out.write(payload);
+		}
+		return compressed.toByteArray();
+	}
+
+	/*
+	 * 	Compress a stream as it is read, for a body whose compressed length is not known in advance
+	 *
+	 * 	@Param	in			uncompressed stream
+	 * 	@Param	encoding	gzip or deflate
+	 * 	@Return	Return stream of the compressed bytes
+	 */
+	public static InputStream encoding(InputStream in, String encoding) {
+		if(! GZIP.equals(encoding)) {
+			return new DeflaterInputStream(in, new Deflater(), 8192);
+		}
+		//gzip is a fixed header, raw deflate data, then a trailer of the CRC and length of the uncompressed data
+		CheckedInputStream checked = new CheckedInputStream(in, new CRC32());
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		InputStream[] parts = {
+			new ByteArrayInputStream(new byte[] { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff }),
+			new DeflaterInputStream(checked, deflater, 8192),
+			null
+		};
+		return new SequenceInputStream(new Enumeration<InputStream>() {
+			private int next;
+
+			@Override
+			public boolean hasMoreElements() {
+				return this.next < parts.length;
+			}
+
+			@Override
+			public InputStream nextElement() {
+				if(this.next >= parts.length) {
+					throw new NoSuchElementException();
+				}
+				if(this.next == parts.length - 1) {
+					//Only asked for once the deflated data has been read to the end, so the CRC is complete
+					ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+					trailer.putInt((int) checked.getChecksum().getValue());
+					trailer.putInt((int) deflater.getBytesRead());
+					deflater.end();
+					parts[this.next] = new ByteArrayInputStream(trailer.array());
+				}
+				return parts[this.next++];
+			}
+		});
+	}
+
+	/*
+	 * 	@Return	Return gzip or deflate if the response body is compressed, or null if it is not
+	 */
+	private static String contentEncoding(HttpResponse.ResponseInfo responseInfo) {
+		String encoding = responseInfo.headers().firstValue("Content-Encoding").orElse("").trim().toLowerCase(Locale.ROOT);
+		if(encoding.equals(GZIP) || encoding.equals("x-gzip")) {
+			return GZIP;
+		}
+		return encoding.equals(DEFLATE) ? DEFLATE : null;
+	}
+}
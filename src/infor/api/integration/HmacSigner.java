@@ -0,0 +1,326 @@
+package infor.api.integration;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/*
+ * 	Create signatures to authenticate API requests using HMAC Authorization
+ * 	See https://developer.infornexus.com/api/api-overview/hmac-authentication for more info
+ * 
+ * 	The signing base is the lowercased values of the date, method and pathInfo headers (sorted by header
+ * 	name) followed, for a POST, by the lowercased payload. Rather than building that string, each piece is
+ * 	lowercased and encoded a buffer at a time straight into the Mac, so signing allocates nothing in
+ * 	proportion to the payload size
+ * 	A capital sigma lowercases to the final or the plain form depending on the letters around it, so text
+ * 	that contains one is lowercased with String.toLowerCase instead; a file is only split between two
+ * 	buffers after whitespace or markup punctuation such as < > = /, which String.toLowerCase never looks
+ * 	across, so that context is never split
+ * 
+ * 	The secret key is prepared once. Each Mac, with its encoder and buffers, is used by one thread at a
+ * 	time and returned to a pool afterwards, so there are at most as many as there are concurrent signers
+ */
+public class HmacSigner {
+	static final String HMAC_ALGORITHM = "HmacSHA256";
+	static final int BUFFER_CHARS = 8192;
+	static final DateTimeFormatter X_DAPI_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssZ");
+	
+	private final SecretKeySpec secretKey;
+	private final ConcurrentLinkedQueue<SigningState> idleStates = new ConcurrentLinkedQueue<SigningState>();
+	
+	public HmacSigner(String secretKey) {
+		this.secretKey = new SecretKeySpec(secretKey.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+		//Fail now rather than on the first request if the key cannot be used
+		this.idleStates.add(new SigningState(this.secretKey));
+	}
+	
+	/*
+	 * 	Create Signing Signature to Authenticate API Request
+	 * 
+	 *  @Param	uri			uri of API Request
+	 *  @Param	method		Either GET or POST
+	 *  @Param	xDapiDate	x-dapi-date request header set based on current time
+	 *  @Param	payload		payload if request is a POST, otherwise null
+	 *  
+	 *  @Return	Return Base64 signature to create HMAC Authorization Hash String
+	 */
+	public String sign(String uri, String method, String xDapiDate, CharSequence payload) {
+		SigningState state = takeState();
+		updateCanonicalHeaders(state, uri, method, xDapiDate);
+		if(method.equalsIgnoreCase("POST") && payload != null) {
+			state.updateLowercase(payload);
+		}
+		String signature = state.finish();
+		returnState(state);
+		return signature;
+	}
+	
+	/*
+	 * 	Same as above, but sign a POST whose payload is the UTF-8 content of a file
+	 * 	The file is decoded, lowercased and fed to the Mac a buffer at a time straight from a FileChannel
+	 * 
+	 *  @Param	payloadFile	file to be sent as the request body
+	 */
+	public String sign(String uri, String method, String xDapiDate, Path payloadFile) throws IOException {
+		SigningState state = takeState();
+		updateCanonicalHeaders(state, uri, method, xDapiDate);
+		if(method.equalsIgnoreCase("POST")) {
+			//If the read fails the state is part way through a payload, so it is dropped rather than returned
+			try (FileChannel channel = FileChannel.open(payloadFile, StandardOpenOption.READ)) {
+				state.updateLowercase(channel);
+			}
+		}
+		String signature = state.finish();
+		returnState(state);
+		return signature;
+	}
+	
+	/*
+	 * 	Compute x-dapi-date header for HMAC API Request
+	 * 
+	 * 	@Return value for HMAC API Request x-dapi-date header
+	 */
+	public static String computeXDapiDate() {
+		return X_DAPI_DATE_FORMAT.format(ZonedDateTime.now());
+	}
+	
+	/*
+	 * 	Feed the canonical headers into the Mac - values lowercased in header name order: date, method, pathInfo
+	 */
+	void updateCanonicalHeaders(SigningState state, String uri, String method, String xDapiDate) {
+		state.updateLowercase(xDapiDate);
+		state.updateLowercase(method);
+		//pathInfo is everything from the first '/' after the scheme and host, query included
+		int hostStart = uri.indexOf("://");
+		int pathStart = uri.indexOf('/', hostStart < 0 ? 0 : hostStart + 3);
+		state.updateLowercase(pathStart < 0 ? "/" : uri.subSequence(pathStart, uri.length()));
+	}
+	
+	SigningState takeState() {
+		SigningState state = this.idleStates.poll();
+		return state != null ? state : new SigningState(this.secretKey);
+	}
+	
+	void returnState(SigningState state) {
+		this.idleStates.offer(state);
+	}
+	
+	/*
+	 * 	A Mac initialised with the secret key plus the buffers used to lowercase and encode into it
+	 */
+	static class SigningState {
+		//No text came before, or what came before does not end in a word break
+		private static final char NO_CONTEXT = '\uffff';
+		//Besides whitespace, the chars a file is split after: neither cased nor case-ignorable, and the JDK's
+		//word rules break on both sides of each. . ' - _ " , are not among them - they are case-ignorable or
+		//join the text either side of them into one word
+		private static final String WORD_BREAKS = "<>=/()[]{}+!?#%*|~@$&;\\";
+		
+		private final Mac mac;
+		private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		private final CharBuffer chars = CharBuffer.allocate(BUFFER_CHARS);
+		private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_CHARS * 4);
+		private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		//Only allocated by states that have signed a file payload
+		private ByteBuffer fileBytes;
+		private CharBuffer fileChars;
+		
+		SigningState(SecretKeySpec secretKey) {
+			try {
+				this.mac = Mac.getInstance(HMAC_ALGORITHM);
+				this.mac.init(secretKey);
+			} catch (GeneralSecurityException e) {
+				throw new IllegalStateException("Cannot initialise " + HMAC_ALGORITHM + " signer", e);
+			}
+		}
+		
+		/*
+		 * 	Lowercase text and add its UTF-8 bytes to the Mac
+		 * 	Matches String.toLowerCase for the root locale, including the two-char lowercase of U+0130 and
+		 * 	the final form of a capital sigma at the end of a word
+		 */
+		void updateLowercase(CharSequence text) {
+			updateLowercase(text, NO_CONTEXT);
+		}
+		
+		/*
+		 * 	Same as above for text that follows on from earlier text ending in the word break char before -
+		 * 	String.toLowerCase can look back past the start of a word to choose the form of a capital sigma
+		 */
+		private void updateLowercase(CharSequence text, char before) {
+			if(containsCapitalSigma(text)) {
+				if(before == NO_CONTEXT) {
+					update(text.toString().toLowerCase(Locale.ROOT), 0);
+				} else {
+					//A word break lowercases to itself, so the lowercased text starts one char in
+					update((before + text.toString()).toLowerCase(Locale.ROOT), 1);
+				}
+				return;
+			}
+			int length = text.length();
+			int i = 0;
+			while(i < length) {
+				int codePoint = Character.codePointAt(text, i);
+				i += Character.charCount(codePoint);
+				if(this.chars.remaining() < 2) {
+					encodeBuffered(false);
+				}
+				if(codePoint == '\u0130') {
+					this.chars.put('i').put('\u0307');
+				} else {
+					int lower = Character.toLowerCase(codePoint);
+					if(Character.isBmpCodePoint(lower)) {
+						this.chars.put((char) lower);
+					} else {
+						this.chars.put(Character.highSurrogate(lower)).put(Character.lowSurrogate(lower));
+					}
+				}
+			}
+			encodeBuffered(false);
+		}
+		
+		/*
+		 * 	Add text that is already lowercased, from index start, to the Mac
+		 */
+		private void update(CharSequence text, int start) {
+			int length = text.length();
+			for(int i = start; i < length; i++) {
+				if(! this.chars.hasRemaining()) {
+					encodeBuffered(false);
+				}
+				this.chars.put(text.charAt(i));
+			}
+			encodeBuffered(false);
+		}
+		
+		private static boolean containsCapitalSigma(CharSequence text) {
+			int length = text.length();
+			for(int i = 0; i < length; i++) {
+				if(text.charAt(i) == '\u03a3') {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		/*
+		 * 	Decode a channel as UTF-8, then lowercase and add it to the Mac as above
+		 * 	Whatever follows the last word break decoded is held back until the next one is decoded, so a word -
+		 * 	and a surrogate pair - is always lowercased in one piece; a run with no word break in it that fills
+		 * 	the buffer grows the buffer rather than being cut
+		 */
+		void updateLowercase(ReadableByteChannel channel) throws IOException {
+			if(this.fileBytes == null) {
+				this.fileBytes = ByteBuffer.allocateDirect(BUFFER_CHARS * 4);
+			}
+			//A buffer grown for one long run is not kept for the next file
+			if(this.fileChars == null || this.fileChars.capacity() != BUFFER_CHARS) {
+				this.fileChars = CharBuffer.allocate(BUFFER_CHARS);
+			}
+			this.decoder.reset();
+			this.fileBytes.clear();
+			this.fileChars.clear();
+			char before = NO_CONTEXT;
+			boolean endOfInput = false;
+			while(! endOfInput) {
+				endOfInput = channel.read(this.fileBytes) == -1;
+				this.fileBytes.flip();
+				CoderResult result;
+				do {
+					result = this.decoder.decode(this.fileBytes, this.fileChars, endOfInput);
+					if(endOfInput && result.isUnderflow()) {
+						this.decoder.flush(this.fileChars);
+					}
+					this.fileChars.flip();
+					int limit = this.fileChars.limit();
+					if(! endOfInput) {
+						this.fileChars.limit(endOfLastWordBreak(this.fileChars));
+					}
+					int end = this.fileChars.limit();
+					if(end > this.fileChars.position()) {
+						char last = this.fileChars.get(end - 1);
+						updateLowercase(this.fileChars, before);
+						before = isWordBreak(last) ? last : NO_CONTEXT;
+					}
+					this.fileChars.position(end).limit(limit);
+					this.fileChars.compact();
+					if(! this.fileChars.hasRemaining()) {
+						this.fileChars.flip();
+						this.fileChars = CharBuffer.allocate(this.fileChars.capacity() * 2).put(this.fileChars);
+					}
+				} while(result.isOverflow());
+				this.fileBytes.compact();
+			}
+		}
+		
+		/*
+		 * 	@Return	Return index just past the last word break in the buffer's remaining chars, or the position if
+		 * 			there is none
+		 */
+		private static int endOfLastWordBreak(CharBuffer buffer) {
+			int start = buffer.position();
+			for(int i = buffer.limit() - 1; i >= start; i--) {
+				if(isWordBreak(buffer.get(i))) {
+					return i + 1;
+				}
+			}
+			return start;
+		}
+		
+		/*
+		 * 	@Return	Return true if String.toLowerCase never looks past c for the letters around a capital sigma
+		 */
+		private static boolean isWordBreak(char c) {
+			return Character.isWhitespace(c) || WORD_BREAKS.indexOf(c) >= 0;
+		}
+		
+		/*
+		 * 	Encode and digest the buffered characters and reset for the next request
+		 * 
+		 * 	@Return	Return Base64 HMAC of everything passed to updateLowercase since the last call
+		 */
+		String finish() {
+			encodeBuffered(true);
+			this.bytes.clear();
+			this.encoder.flush(this.bytes);
+			this.bytes.flip();
+			this.mac.update(this.bytes);
+			this.bytes.clear();
+			this.encoder.reset();
+			return Base64.getEncoder().encodeToString(this.mac.doFinal());
+		}
+		
+		private void encodeBuffered(boolean endOfInput) {
+			this.chars.flip();
+			CoderResult result;
+			do {
+				result = this.encoder.encode(this.chars, this.bytes, endOfInput);
+				this.bytes.flip();
+				this.mac.update(this.bytes);
+				this.bytes.clear();
+			} while(result.isOverflow());
+			//A lone high surrogate at the end is kept until its pair arrives
+			this.chars.compact();
+		}
+	}
+}
@@ -1,31 +1,16 @@
 package infor.api.integration;
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
-import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
-import java.io.UnsupportedEncodingException;
-import java.net.ConnectException;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Base64;
-import java.util.Collections;
-import java.util.Date;
-import java.util.HashMap;
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.PropertyException;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
 
 import infor.api.resources.IntegrationQueryResult;
 
@@ -36,6 +21,8 @@ public class InforAPI {
 	static String[] expectedArgs = {"user", "accessKey", "secret", "url", "datakey", "method"};
 	
 	private static InforAPIDefinition apiDef;
+	private static volatile InforAPIClient defaultClient;
+	private static volatile JAXBContext queryResultContext;
 	public InforAPI(InforAPIDefinition inforApiDef) {
 		if( InforAPI.apiDef != null ) {
 			System.err.println("Must define apiDef from config file");
@@ -45,224 +32,113 @@ public class InforAPI {
 	/*
 	 * 	Bind apiDefinition, which is sourced from config.properties, to this static class which
 	 * 	executes the Infor API Requests
+	 * 	The static requests below go through a default InforAPIClient with a pool of its own; to talk to
+	 * 	several tenants from one process build an InforAPIClientPool and a client per tenant instead
 	 */
 	public static void setApiDefinition(InforAPIDefinition ad) {
 		InforAPI.apiDef = ad;
+		configureProcess(ad);
+		InforAPIClient client = new InforAPIClientPool(ad, ad.getSessionCapacity()).newClient(ad);
+		InforAPI.defaultClient = client;
+		IntegrationMetrics.setSessionGauges(() -> client.getSessionsInFlight(), () -> client.getCurrentSessionLimit());
 	}
 	
 	/*
-	 * 	Execute Outbox poll request on Infor Platform
-	 * 
-	 * 	@Return	Return query result Java object representation of poll server response
+	 * 	Apply the process wide settings of an api definition - logging and where metrics are published
+	 * 	Called once per process, before any client is built, whether there is one tenant or many
 	 */
-	public static IntegrationQueryResult executeOutboxListReq() {
-		String uri = InforAPI.apiDef.getHost() + "/rest/3.1/integration/outbox/list";
-		
-		String outboxListStringResponse = InforAPI.executeRequest(uri, "GET", CONTEXT_TYPE_XML, null);
-		IntegrationQueryResult queryResult = bindOutboxListXmlToObject(outboxListStringResponse);
-		//printXmlObject(queryResult);
-		return queryResult;
+	public static void configureProcess(InforAPIDefinition ad) {
+		Log.configure(ad.getLogLevel(), ad.getLogFile());
+		Log.setProgressInterval(ad.getProgressIntervalSeconds());
+		if(ad.useMetricsJmx()) {
+			IntegrationMetrics.registerJmx();
+		}
+		if(ad.getMetricsPrometheusFile() != null) {
+			IntegrationMetrics.startPrometheusFileWriter(ad.getMetricsPrometheusFile(), ad.getMetricsWriteIntervalSeconds());
+		}
 	}
 	
 	/*
-	 * 	Fetch a message using its messageId from Integration API outbox
-	 * 	@Param	docId	messageUID
-	 * 	@Return	string xml response from the server
+	 * 	@Return	Return the client bound by setApiDefinition, which the static requests below use
 	 */
-	public static String fetchIntegrationDocument(Integer docId) {
-		String uri = InforAPI.apiDef.getHost() + "/rest/3.1/integration/outbox/fetch/" + docId;
-		
-		String fetchDocXmlString = InforAPI.executeRequest(uri, "GET", CONTEXT_TYPE_XML, null);
-		return fetchDocXmlString;
+	public static InforAPIClient getDefaultClient() {
+		InforAPIClient client = InforAPI.defaultClient;
+		if(client == null) {
+			throw new IllegalStateException("setApiDefinition must be called before any request is made");
+		}
+		return client;
 	}
 	
 	/*
-	 * 	Delete a message using its messageId from Integration API outbox
-	 * 	@Param	docId	messageUID
-	 * 	@Return Based on response xml string, return either 202 for accepted or 0 for failure
+	 * 	@Return	Return number of requests currently allowed in flight - changes over time with adaptiveConcurrency
 	 */
-	public static int deleteIntegrationDocument(Integer docId) {
-		String uri = InforAPI.apiDef.getHost() + "/rest/3.1/integration/outbox/delete/" + docId;
-		
-		String fetchDocXmlString = InforAPI.executeRequest(uri, "POST", CONTEXT_TYPE_XML, null);
-		if(fetchDocXmlString.length() > 0 ) {
-			return 202;
-		}
-		return 0;
+	public static int getCurrentSessionLimit() {
+		return getDefaultClient().getCurrentSessionLimit();
 	}
 	
 	/*
-	 * 	Upload a document to the Integration API
-	 * 
-	 * 	@Param	rawXML		raw xml string
-	 * 	@Param	docType		DocType as defined in Adapter Profile associated with Platform Integration
-	 * 	@Return	Return raw xml representation string of server response 
+	 * 	Requests against the default client - see InforAPIClient for each one
 	 */
+	public static IntegrationQueryResult executeOutboxListReq() {
+		return getDefaultClient().executeOutboxListReq();
+	}
+	
+	public static IntegrationQueryResult executeOutboxListReq(int offset) {
+		return getDefaultClient().executeOutboxListReq(offset);
+	}
+	
+	public static String fetchIntegrationDocument(Integer docId) {
+		return getDefaultClient().fetchIntegrationDocument(docId);
+	}
+	
+	public static InputStream openIntegrationDocument(Integer docId) {
+		return getDefaultClient().openIntegrationDocument(docId);
+	}
+	
+	public static int deleteIntegrationDocument(Integer docId) {
+		return getDefaultClient().deleteIntegrationDocument(docId);
+	}
+	
 	public static String uploadIntegrationDocument(String rawXML, String docType) {
-		String uri = InforAPI.apiDef.getHost() + "/rest/3.1/integration/inbound/upload?docType='" + 
-				docType + "'";		
-		String fetchDocXmlString = InforAPI.executeRequest(uri, "POST", CONTEXT_TYPE_XML, rawXML);
-		return fetchDocXmlString;
+		return getDefaultClient().uploadIntegrationDocument(rawXML, docType);
+	}
+	
+	public static String uploadIntegrationDocument(Path xmlFile, String docType) {
+		return getDefaultClient().uploadIntegrationDocument(xmlFile, docType);
 	}
 	
-	/*
-	 * 	Fetch message status of document that was uploaded to Integration Inbox
-	 * 	@Param	messageId	messageUID returned from Integration API uploading
-	 * 	@Return	Return string server response 	
-	 */
 	public static String fetchMessageStatus(Integer messageId) {
-		String uri = InforAPI.apiDef.getHost() + "/rest/3.1/integration/inbound/status/" + messageId;
-		
-		String fetchDocXmlString = InforAPI.executeRequest(uri, "GET", CONTEXT_TYPE_JSON, null);
-		return fetchDocXmlString;
+		return getDefaultClient().fetchMessageStatus(messageId);
 	}
 	
-	/*
-	 * 	Execute Infor API request using HMAC authorization 
-	 * 
-	 * 	@Param	uri				Infor API request uri
-	 * 	@Param	method			GET or POST API method
-	 * 	@Param 	contextType		Context type of request's response - either JSON or XML
-	 * 	@Param	payload			Payload of request, if applicable
-	 * 
-	 * 	@Return	Return string representation of Infor platform server response
-	 */
-	private static String executeRequest(String uri, String method, String contextType,
-			String payload) {
-		String secretKey = InforAPI.apiDef.getSecret();
-		String user = InforAPI.apiDef.getUser();
-		String accessKey = InforAPI.apiDef.getAccessKey();
-		String xDapiDate = computeXDapiDate();
-		String signature = createSignature(uri, secretKey, method, xDapiDate, payload);
-		
-		String hmacAuthorization = createHmacAuthorization(user,accessKey,signature);
-		try {
-			URL url = new URL(uri);
-			HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-			conn.setRequestMethod(method);
-			conn.setRequestProperty("Authorization", hmacAuthorization);
-				//System.out.println("Hmac Auth " + hmacAuthorization);
-			conn.setRequestProperty("datakey", InforAPI.apiDef.getDatakey() );
-			conn.setRequestProperty("x-dapi-date", xDapiDate);
-			conn.setRequestProperty("Content-type", contextType);
-			if(method.equals("POST") && payload != null) {
-				conn.setDoOutput(true);
-				byte[] postData = payload.getBytes("UTF-8");
-				try (DataOutputStream wr = new DataOutputStream(conn.getOutputStream())) {
-	                wr.write(postData);
-	            }
-			}
-			BufferedReader br = new BufferedReader(new InputStreamReader((conn.getInputStream())), 10);
-			System.out.println("Response Code => " + conn.getResponseCode() + " for " + uri);
-			StringBuilder response = new StringBuilder(); 
-            String responseSingle = null; 
-            while ((responseSingle = br.readLine()) != null) {
-                response.append(responseSingle);
-            }
-
-			conn.disconnect();
-			return response.toString();
-		} catch (MalformedURLException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch(ConnectException e) {
-			System.err.println("Cannot find host of " + uri);
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-		return "";
+	public static CompletableFuture<IntegrationQueryResult> executeOutboxListReqAsync(int offset) {
+		return getDefaultClient().executeOutboxListReqAsync(offset);
 	}
 	
-	/*
-	 * 	Create Integration API Authorization header value
-	 * 
-	 * 	@Param	userId		username
-	 * 	@Param	accessKey	HMAC user defined access key
-	 * 	@Param	signingBase	Signing base hash as calculated
-	 * 
-	 * 	@Return	Return value of Authorization header to send HMAC API request
-	 */
-	private static String createHmacAuthorization(String userId, String accessKey, String signingBase) {
-		return "HMAC_1 " + accessKey + ":" + signingBase + ":" + userId;
+	public static CompletableFuture<OutboxListReader> openOutboxListAsync(int offset) {
+		return getDefaultClient().openOutboxListAsync(offset);
 	}
 	
-	/*	
-	 * 	Create Signing Signature to Authenticate API Request using HMAC Authorization
-	 * 	See https://developer.infornexus.com/api/api-overview/hmac-authentication for more info
-	 * 
-	 *  @Param	url			uri of API Request
-	 *  @Param	secretKey	secretKey of hmac user making HMAC API request
-	 *  @Param	method		Either GET or POST
-	 *  @Param	xDapiDate	x-dapi-date request head set based on current time
-	 *  @Param	data		payload if requet is a POST
-	 *  
-	 *  @Return	Return signature to create HMAC Authorization Hash String
-	 */
-	private static String createSignature(String url, String secretKey,String method, String xDapiDate, String data) {
-		HashMap<String,String> requestHeaders = new HashMap<String,String>();
-		requestHeaders.put("method", method);
-		String path = url.replace("https://", "");
-		path = path.substring(path.indexOf("/"));
-		requestHeaders.put("pathInfo", path);
-		requestHeaders.put("date", xDapiDate);
-		String signingBase = canonalizeHeaders(requestHeaders);
-		if(method.toUpperCase().equals("POST") && data != null) {
-			signingBase += data.toLowerCase();
-		}
-			//System.out.println("Signing Base " + signingBase );
-		String secretKeyArg = secretKey;
+	public static CompletableFuture<String> fetchIntegrationDocumentAsync(Integer docId) {
+		return getDefaultClient().fetchIntegrationDocumentAsync(docId);
+	}
 	
-		try {
-			Mac sha256_HMAC = Mac.getInstance("HmacSHA256");
-			SecretKeySpec secret_key = new SecretKeySpec(secretKeyArg.getBytes("UTF-8"), "HmacSHA256");
-		    sha256_HMAC.init(secret_key);
-		    
-		    //Base64 library used from org.apache.commons.codec.binary.Base64
-		    String hash = Base64.getEncoder().encodeToString(sha256_HMAC.doFinal(signingBase.getBytes("UTF-8")));
-		    	//System.out.println("Signature is " + hash);
-		    return hash;
-		} catch (UnsupportedEncodingException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (NoSuchAlgorithmException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (InvalidKeyException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-		
-		//IF POST, add raw string
-		return null;
+	public static CompletableFuture<Integer> deleteIntegrationDocumentAsync(Integer docId) {
+		return getDefaultClient().deleteIntegrationDocumentAsync(docId);
 	}
 	
-	/*
-	 * 	CanonalizeHeaders using requestHeaders for HMAC Authorization API request - see developer.infornexus.com
-	 * 	for more information
-	 * 
-	 * 	@Param	requestHeaders	set of requestHeaders to be sorted and built into signing base	
-	 * 	@Return	return value to build signingBase for HMAC Authorization request
-	 */
-	private static String canonalizeHeaders(HashMap<String,String> requestHeaders) {
-		ArrayList<String> sortedKeys = new ArrayList<String>(requestHeaders.keySet());      
-		Collections.sort(sortedKeys);
-		String headerStr = "";
-		for(String header : sortedKeys) {
-			headerStr += requestHeaders.get(header).toLowerCase();
-		}
-		return headerStr;
+	public static CompletableFuture<String> uploadIntegrationDocumentAsync(String rawXML, String docType) {
+		return getDefaultClient().uploadIntegrationDocumentAsync(rawXML, docType);
 	}
 	
-	/*
-	 * 	Computer x-dapi-date header for HMAC API Request
-	 * 
-	 * 	@Return value for HMAC API Request x-dapi-date header
-	 */
-	private static String computeXDapiDate() {
-		DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ");
-		return df.format(new Date());
+	public static CompletableFuture<String> uploadIntegrationDocumentAsync(Path xmlFile, String docType) {
+		return getDefaultClient().uploadIntegrationDocumentAsync(xmlFile, docType);
+	}
+	
+	public static CompletableFuture<String> fetchMessageStatusAsync(Integer messageId) {
+		return getDefaultClient().fetchMessageStatusAsync(messageId);
 	}
+	
 	/*
 	public static HashMap<String,String> parseArgs(String args[]) {
 		HashMap<String,String> argMap = new HashMap<String,String>();
@@ -293,23 +169,42 @@ public class InforAPI {
 	 * 
 	 * 	@Return	Object representation of Outbox/poll API response
 	 */
-	private static IntegrationQueryResult bindOutboxListXmlToObject(String xmlResponse) {
+	static IntegrationQueryResult bindOutboxListXmlToObject(String xmlResponse) {
+		return bindOutboxListXmlToObject(new StreamSource(new StringReader(xmlResponse)));
+	}
+	
+	/*
+	 * 	Same as above - unmarshal directly from the response stream
+	 */
+	static IntegrationQueryResult bindOutboxListXmlToObject(InputStream xmlResponse) {
+		return bindOutboxListXmlToObject(new StreamSource(xmlResponse));
+	}
+	
+	private static IntegrationQueryResult bindOutboxListXmlToObject(Source xmlResponse) {
 		try {
-			JAXBContext jaxbContext = JAXBContext.newInstance(IntegrationQueryResult.class);              
+			//JAXBContext is thread safe and expensive to build - create it once; Unmarshallers are cheap but not thread safe
+		    Unmarshaller jaxbUnmarshaller = getQueryResultContext().createUnmarshaller();
 		 
-		    Unmarshaller jaxbUnmarshaller = jaxbContext.createUnmarshaller();
-		 
-		    IntegrationQueryResult queryResult = (IntegrationQueryResult) jaxbUnmarshaller.unmarshal(new StringReader(xmlResponse));
+		    IntegrationQueryResult queryResult = (IntegrationQueryResult) jaxbUnmarshaller.unmarshal(xmlResponse);
 		    
-		    System.out.println(queryResult);
+		    Log.debug("{}", queryResult);
 		    return queryResult;
 		}
 		catch (JAXBException e) {
-		    e.printStackTrace();
+		    Log.error("Cannot unmarshal outbox list response", e);
 		}
 		return null;
 	}
 	
+	private static JAXBContext getQueryResultContext() throws JAXBException {
+		JAXBContext context = InforAPI.queryResultContext;
+		if(context == null) {
+			context = JAXBContext.newInstance(IntegrationQueryResult.class);
+			InforAPI.queryResultContext = context;
+		}
+		return context;
+	}
+	
 	/*
 	 *	Print XML JAXB Object
 	 *
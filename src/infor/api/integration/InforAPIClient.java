@@ -0,0 +1,688 @@
+package infor.api.integration;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+import infor.api.resources.IntegrationQueryResult;
+
+/*
+ * 	Execute Infor API requests for one tenant - one datakey, user and secret
+ * 	Each client enforces its own maxConcurrentSessions (adaptively, if configured), retry policy and circuit
+ * 	breaker, and signs with its own secret. The HTTP transport, the scheduler and the global session budget
+ * 	come from the InforAPIClientPool it was built from, so any number of clients can run side by side in one
+ * 	process. A request holds a session of its tenant and one of the global budget, always taken in that order
+ */
+public class InforAPIClient {
+	static final String CONTEXT_TYPE_JSON = InforAPI.CONTEXT_TYPE_JSON;
+	static final String CONTEXT_TYPE_XML = InforAPI.CONTEXT_TYPE_XML;
+	
+	private final InforAPIDefinition apiDef;
+	private final InforAPIClientPool pool;
+	private final SessionLimiter sessionLimiter;
+	private final AdaptiveConcurrencyLimit adaptiveLimit;
+	private final RetryPolicy retryPolicy;
+	private final CircuitBreaker circuitBreaker;
+	private final HmacSigner signer;
+	
+	InforAPIClient(InforAPIDefinition ad, InforAPIClientPool pool) {
+		this.apiDef = ad;
+		this.pool = pool;
+		this.sessionLimiter = new SessionLimiter(ad.getMaxConcurrentSessions());
+		this.adaptiveLimit = ad.useAdaptiveConcurrency() ? 
+				new AdaptiveConcurrencyLimit(this.sessionLimiter, ad.getMinConcurrentSessions(), ad.getMaxConcurrentSessionsCeiling()) : null;
+		this.retryPolicy = new RetryPolicy(ad.getMaxRequestAttempts(), ad.getRetryBaseDelayMillis(), ad.getRetryMaxDelayMillis());
+		this.circuitBreaker = new CircuitBreaker(ad.getCircuitBreakerFailureThreshold(), ad.getCircuitBreakerOpenSeconds() * 1000L);
+		this.signer = new HmacSigner(ad.getSecret());
+	}
+	
+	public InforAPIDefinition getApiDefinition() {
+		return this.apiDef;
+	}
+	
+	public InforAPIClientPool getPool() {
+		return this.pool;
+	}
+	
+	/*
+	 * 	@Return	Return number of this tenant's sessions currently in flight
+	 */
+	public int getSessionsInFlight() {
+		return this.sessionLimiter.getInFlight();
+	}
+	
+	/*
+	 * 	Block until both a session of this tenant and one of the pool's global budget are free, and take them
+	 */
+	private void acquireSession() throws InterruptedException {
+		this.sessionLimiter.acquire();
+		try {
+			this.pool.getGlobalSessions().acquire();
+		} catch (InterruptedException | RuntimeException e) {
+			this.sessionLimiter.release();
+			throw e;
+		}
+	}
+	
+	/*
+	 * 	Same as above without blocking the calling thread
+	 */
+	private CompletableFuture<Void> acquireSessionAsync() {
+		return this.sessionLimiter.acquireAsync().thenCompose((v) -> this.pool.getGlobalSessions().acquireAsync());
+	}
+	
+	private void releaseSession() {
+		this.pool.getGlobalSessions().release();
+		this.sessionLimiter.release();
+	}
+	
+	/*
+	 * 	@Return	Return number of requests currently allowed in flight - changes over time with adaptiveConcurrency
+	 */
+	public int getCurrentSessionLimit() {
+		return this.sessionLimiter.getLimit();
+	}
+	
+	/*
+	 * 	Execute Outbox poll request on Infor Platform
+	 * 
+	 * 	@Return	Return query result Java object representation of poll server response
+	 */
+	public IntegrationQueryResult executeOutboxListReq() {
+		return executeOutboxListReq(0);
+	}
+	
+	/*
+	 * 	Execute Outbox poll request for the page of results starting at offset
+	 * 
+	 * 	@Param	offset	row offset into the outbox of the first result to return
+	 * 	@Return	Return query result Java object representation of poll server response
+	 */
+	public IntegrationQueryResult executeOutboxListReq(int offset) {
+		String uri = outboxListUri(offset);
+		
+		String outboxListStringResponse = this.executeRequest(uri, "GET", CONTEXT_TYPE_XML, null);
+		IntegrationQueryResult queryResult = InforAPI.bindOutboxListXmlToObject(outboxListStringResponse);
+		//printXmlObject(queryResult);
+		return queryResult;
+	}
+	
+	private String outboxListUri(int offset) {
+		String uri = this.apiDef.getHost() + "/rest/3.1/integration/outbox/list";
+		if(offset > 0) {
+			uri += "?offset=" + offset;
+		}
+		return uri;
+	}
+	
+	/*
+	 * 	Fetch a message using its messageId from Integration API outbox
+	 * 	@Param	docId	messageUID
+	 * 	@Return	string xml response from the server
+	 */
+	public String fetchIntegrationDocument(Integer docId) {
+		String uri = this.apiDef.getHost() + "/rest/3.1/integration/outbox/fetch/" + docId;
+		
+		String fetchDocXmlString = this.executeRequest(uri, "GET", CONTEXT_TYPE_XML, null);
+		return fetchDocXmlString;
+	}
+	
+	/*
+	 * 	Fetch a message using its messageId from Integration API outbox as a stream, leaving the body unread
+	 * 	The request holds its session until the returned stream is closed, so callers must close it
+	 * 	@Param	docId	messageUID
+	 * 	@Return	stream of the xml response from the server, or null if the request failed
+	 */
+	public InputStream openIntegrationDocument(Integer docId) {
+		String uri = this.apiDef.getHost() + "/rest/3.1/integration/outbox/fetch/" + docId;
+		
+		return this.executeRequestForStream(uri, "GET", CONTEXT_TYPE_XML, null);
+	}
+	
+	/*
+	 * 	Delete a message using its messageId from Integration API outbox
+	 * 	@Param	docId	messageUID
+	 * 	@Return Based on response xml string, return either 202 for accepted or 0 for failure
+	 */
+	public int deleteIntegrationDocument(Integer docId) {
+		String uri = this.apiDef.getHost() + "/rest/3.1/integration/outbox/delete/" + docId;
+		
+		String fetchDocXmlString = this.executeRequest(uri, "POST", CONTEXT_TYPE_XML, null);
+		if(fetchDocXmlString.length() > 0 ) {
+			return 202;
+		}
+		return 0;
+	}
+	
+	/*
+	 * 	Upload a document to the Integration API
+	 * 
+	 * 	@Param	rawXML		raw xml string
+	 * 	@Param	docType		DocType as defined in Adapter Profile associated with Platform Integration
+	 * 	@Return	Return raw xml representation string of server response 
+	 */
+	public String uploadIntegrationDocument(String rawXML, String docType) {
+		String uri = this.apiDef.getHost() + "/rest/3.1/integration/inbound/upload?docType='" + 
+				docType + "'";		
+		String fetchDocXmlString = this.executeRequest(uri, "POST", CONTEXT_TYPE_XML, RequestBody.ofString(rawXML));
+		return fetchDocXmlString;
+	}
+	
+	/*
+	 * 	Same as above, but stream the document from a file rather than building it as a String
+	 * 	Heap use does not depend on the size of the file
+	 * 
+	 * 	@Param	xmlFile		UTF-8 xml file to upload as is
+	 */
+	public String uploadIntegrationDocument(Path xmlFile, String docType) {
+		String uri = this.apiDef.getHost() + "/rest/3.1/integration/inbound/upload?docType='" + 
+				docType + "'";
+		return this.executeRequest(uri, "POST", CONTEXT_TYPE_XML, RequestBody.ofFile(xmlFile));
+	}
+	
+	/*
+	 * 	Fetch message status of document that was uploaded to Integration Inbox
+	 * 	@Param	messageId	messageUID returned from Integration API uploading
+	 * 	@Return	Return string server response 	
+	 */
+	public String fetchMessageStatus(Integer messageId) {
+		return fetchMessageStatus(messageId, (responseCode, body) -> body);
+	}
+	
+	/*
+	 * 	Same as above, but hand the response code to reader along with the body, so a message the server
+	 * 	rejects (4xx) can be told apart from one whose status could not be read this time
+	 * 	@Param	reader		Called with the response code and body - -1 and an empty body if no response was received
+	 * 	@Return	Return what reader returns
+	 */
+	public <R> R fetchMessageStatus(Integer messageId, BiFunction<Integer, String, R> reader) {
+		String uri = this.apiDef.getHost() + "/rest/3.1/integration/inbound/status/" + messageId;
+		
+		return this.executeRequest(uri, "GET", CONTEXT_TYPE_JSON, null, reader);
+	}
+	
+	/*
+	 * 	Asynchronous versions of the requests above. Each returns immediately with a future that
+	 * 	completes with the same value the blocking call would have returned, so fetch, write and
+	 * 	delete or upload and status polling can be chained without holding a thread per step
+	 */
+	public CompletableFuture<IntegrationQueryResult> executeOutboxListReqAsync(int offset) {
+		String uri = outboxListUri(offset);
+		
+		return this.executeRequestAsync(uri, "GET", CONTEXT_TYPE_XML, null)
+				.thenApply(InforAPI::bindOutboxListXmlToObject);
+	}
+	
+	/*
+	 * 	Request a page of the outbox and read it as a stream of nodes, without building the full result list
+	 * 	The outbox list parser configured in the api definition decides whether StAX or JAXB reads the response
+	 * 
+	 * 	@Param	offset	row offset into the outbox of the first result to return
+	 * 	@Return	Return future reader over the page's nodes, or null if the request failed
+	 */
+	public CompletableFuture<OutboxListReader> openOutboxListAsync(int offset) {
+		String uri = outboxListUri(offset);
+		boolean useJaxb = this.apiDef.useJaxbOutboxListParser();
+		
+		return this.executeRequestForStreamAsync(uri, "GET", CONTEXT_TYPE_XML, null)
+				.thenApply((in) -> in != null ? new OutboxListReader(in, useJaxb) : null);
+	}
+	
+	public CompletableFuture<String> fetchIntegrationDocumentAsync(Integer docId) {
+		String uri = this.apiDef.getHost() + "/rest/3.1/integration/outbox/fetch/" + docId;
+		
+		return this.executeRequestAsync(uri, "GET", CONTEXT_TYPE_XML, null);
+	}
+	
+	public CompletableFuture<Integer> deleteIntegrationDocumentAsync(Integer docId) {
+		String uri = this.apiDef.getHost() + "/rest/3.1/integration/outbox/delete/" + docId;
+		
+		return this.executeRequestAsync(uri, "POST", CONTEXT_TYPE_XML, null)
+				.thenApply((response) -> response.length() > 0 ? 202 : 0);
+	}
+	
+	public CompletableFuture<String> uploadIntegrationDocumentAsync(String rawXML, String docType) {
+		String uri = this.apiDef.getHost() + "/rest/3.1/integration/inbound/upload?docType='" + 
+				docType + "'";
+		return this.executeRequestAsync(uri, "POST", CONTEXT_TYPE_XML, RequestBody.ofString(rawXML));
+	}
+	
+	public CompletableFuture<String> uploadIntegrationDocumentAsync(Path xmlFile, String docType) {
+		String uri = this.apiDef.getHost() + "/rest/3.1/integration/inbound/upload?docType='" + 
+				docType + "'";
+		return this.executeRequestAsync(uri, "POST", CONTEXT_TYPE_XML, RequestBody.ofFile(xmlFile));
+	}
+	
+	public CompletableFuture<String> fetchMessageStatusAsync(Integer messageId) {
+		return fetchMessageStatusAsync(messageId, (responseCode, body) -> body);
+	}
+	
+	public <R> CompletableFuture<R> fetchMessageStatusAsync(Integer messageId, BiFunction<Integer, String, R> reader) {
+		String uri = this.apiDef.getHost() + "/rest/3.1/integration/inbound/status/" + messageId;
+		
+		return this.executeRequestAsync(uri, "GET", CONTEXT_TYPE_JSON, null, reader);
+	}
+	
+	/*
+	 * 	Execute Infor API request using HMAC authorization 
+	 * 
+	 * 	@Param	uri				Infor API request uri
+	 * 	@Param	method			GET or POST API method
+	 * 	@Param 	contextType		Context type of request's response - either JSON or XML
+	 * 	@Param	payload			Payload of request, if applicable
+	 * 
+	 * 	@Return	Return string representation of Infor platform server response
+	 */
+	private String executeRequest(String uri, String method, String contextType,
+			RequestBody payload) {
+		return executeRequest(uri, method, contextType, payload, (responseCode, body) -> body);
+	}
+	
+	/*
+	 * 	Same as above, handing reader the response code along with the body
+	 * 	The body is empty for an error response; the code is -1 if no response was received
+	 */
+	private <R> R executeRequest(String uri, String method, String contextType,
+			RequestBody payload, BiFunction<Integer, String, R> reader) {
+		try {
+			HttpResponse<String> response = sendWithRetry(uri, method, contextType, payload, ContentEncoding.ofString(uri));
+			this.releaseSession();
+			return reader.apply(response.statusCode(), readResponse(uri, response));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Exception e) {
+			reportRequestFailure(uri, e);
+		}
+		return reader.apply(-1, "");
+	}
+	
+	/*
+	 * 	Same as above, but wait for a free session and the server's response without blocking
+	 * 	Request is signed once a session is free so x-dapi-date reflects when it is actually sent
+	 * 
+	 * 	@Return	Return future of string representation of Infor platform server response
+	 */
+	private CompletableFuture<String> executeRequestAsync(String uri, String method, String contextType,
+			RequestBody payload) {
+		return executeRequestAsync(uri, method, contextType, payload, (responseCode, body) -> body);
+	}
+	
+	private <R> CompletableFuture<R> executeRequestAsync(String uri, String method, String contextType,
+			RequestBody payload, BiFunction<Integer, String, R> reader) {
+		return sendWithRetryAsync(uri, method, contextType, payload, ContentEncoding.ofString(uri), 1)
+				.handle((response, e) -> {
+					if(e != null) {
+						reportRequestFailure(uri, unwrap(e));
+						return reader.apply(-1, "");
+					}
+					this.releaseSession();
+					return reader.apply(response.statusCode(), readResponse(uri, response));
+				});
+	}
+	
+	/*
+	 * 	Same as above, but return as soon as the response headers arrive with the body left unread on the stream
+	 * 	The session stays held until the returned stream is closed
+	 * 
+	 * 	@Return	Return the response body stream, or null if the request failed
+	 */
+	private InputStream executeRequestForStream(String uri, String method, String contextType,
+			RequestBody payload) {
+		try {
+			HttpResponse<InputStream> response = sendWithRetry(uri, method, contextType, payload, ContentEncoding.ofInputStream(uri));
+			InputStream body = readStreamResponse(uri, response);
+			if(body == null) {
+				this.releaseSession();
+				return null;
+			}
+			return new SessionReleasingInputStream(body);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Exception e) {
+			reportRequestFailure(uri, e);
+		}
+		return null;
+	}
+	
+	/*
+	 * 	Asynchronous version of the above, completing as soon as the response headers arrive
+	 * 	The session is released at that point rather than when the stream is closed; a reader draining an outbox
+	 * 	list page must never hold a session the fetch workers for that same page are waiting on
+	 * 
+	 * 	@Return	Return future of the response body stream, or null if the request failed
+	 */
+	private CompletableFuture<InputStream> executeRequestForStreamAsync(String uri, String method, String contextType,
+			RequestBody payload) {
+		return sendWithRetryAsync(uri, method, contextType, payload, ContentEncoding.ofInputStream(uri), 1)
+				.handle((response, e) -> {
+					if(e != null) {
+						reportRequestFailure(uri, unwrap(e));
+						return null;
+					}
+					this.releaseSession();
+					return readStreamResponse(uri, response);
+				});
+	}
+	
+	/*
+	 * 	Take a session, sign and send a request, retrying retryable failures as the RetryPolicy allows
+	 * 	The session is given back while waiting to retry so a backing off request never holds one, and
+	 * 	no attempt is made while the circuit breaker is open - waiting for it counts as a failed attempt
+	 * 	A POST with a payload is an upload and is treated as not idempotent
+	 * 	An attempt that never reaches the host - interrupted, or a payload file that cannot be read - is not
+	 * 	held against it; the circuit breaker is told the attempt was abandoned so a trial is never left hanging
+	 * 
+	 * 	@Return	Return the final response with its session still held - the caller must release it
+	 * 			Throws the last failure, with no session held, if every attempt failed to get a response
+	 */
+	private <T> HttpResponse<T> sendWithRetry(String uri, String method, String contextType, RequestBody payload,
+			HttpResponse.BodyHandler<T> handler) throws IOException, InterruptedException {
+		boolean idempotent = ! (method.equals("POST") && payload != null);
+		int maxAttempts = this.retryPolicy.getMaxAttempts();
+		for(int attempt = 1; ; attempt++) {
+			long breakerWait = this.circuitBreaker.millisUntilAllowed();
+			if(breakerWait > 0) {
+				if(attempt >= maxAttempts) {
+					throw new ConnectException("Circuit breaker is open for " + this.apiDef.getHost());
+				}
+				Thread.sleep(breakerWait);
+				continue;
+			}
+			HttpRequest request;
+			try {
+				this.acquireSession();
+			} catch (InterruptedException | RuntimeException e) {
+				this.circuitBreaker.onAbandoned();
+				throw e;
+			}
+			try {
+				request = buildRequest(uri, method, contextType, payload);
+			} catch (IOException | RuntimeException e) {
+				//A payload file that cannot be read is a local failure - it is not retried and not held against the host
+				this.releaseSession();
+				this.circuitBreaker.onAbandoned();
+				throw e;
+			}
+			long start = System.nanoTime();
+			HttpResponse<T> response;
+			try {
+				response = this.pool.getTransport().send(request, handler);
+			} catch (IOException e) {
+				this.releaseSession();
+				recordOutcome(uri, payload, start, -1);
+				if(! this.retryPolicy.isRetryable(e, idempotent) || attempt >= maxAttempts) {
+					throw e;
+				}
+				Log.warn("Attempt {} failed for {} ({}) - retrying", attempt, uri, e);
+				IntegrationMetrics.recordRetry(uri);
+				Thread.sleep(this.retryPolicy.backoffMillis(attempt, null));
+				continue;
+			} catch (InterruptedException | RuntimeException e) {
+				this.releaseSession();
+				this.circuitBreaker.onAbandoned();
+				throw e;
+			}
+			recordOutcome(uri, payload, start, response.statusCode());
+			if(! this.retryPolicy.isRetryable(response.statusCode(), idempotent) || attempt >= maxAttempts) {
+				return response;
+			}
+			discardBody(response);
+			this.releaseSession();
+			Log.warn("Attempt {} got response code {} for {} - retrying", attempt, response.statusCode(), uri);
+			IntegrationMetrics.recordRetry(uri);
+			Thread.sleep(this.retryPolicy.backoffMillis(attempt, response.headers().firstValue("Retry-After").orElse(null)));
+		}
+	}
+	
+	/*
+	 * 	Asynchronous version of the above - waits are scheduled rather than slept
+	 * 
+	 * 	@Return	Return future of the final response with its session still held - the caller must release it
+	 * 			Completes exceptionally, with no session held, if every attempt failed to get a response
+	 */
+	private <T> CompletableFuture<HttpResponse<T>> sendWithRetryAsync(String uri, String method, String contextType,
+			RequestBody payload, HttpResponse.BodyHandler<T> handler, int attempt) {
+		boolean idempotent = ! (method.equals("POST") && payload != null);
+		int maxAttempts = this.retryPolicy.getMaxAttempts();
+		long breakerWait = this.circuitBreaker.millisUntilAllowed();
+		if(breakerWait > 0) {
+			if(attempt >= maxAttempts) {
+				return CompletableFuture.failedFuture(new ConnectException("Circuit breaker is open for " + this.apiDef.getHost()));
+			}
+			return afterDelay(breakerWait, () -> sendWithRetryAsync(uri, method, contextType, payload, handler, attempt + 1));
+		}
+		long[] start = new long[1];
+		return this.acquireSessionAsync()
+				.thenCompose((v) -> {
+					HttpRequest request;
+					try {
+						request = buildRequest(uri, method, contextType, payload);
+					} catch (IOException e) {
+						throw new RequestNotSentException(e);
+					}
+					start[0] = System.nanoTime();
+					return this.pool.getTransport().sendAsync(request, handler);
+				})
+				.handle((response, e) -> {
+					if(e != null) {
+						this.releaseSession();
+						Throwable cause = unwrap(e);
+						if(! (cause instanceof IOException) || isRequestNotSent(e)) {
+							//Never reached the host - a payload file that cannot be read, or a local error
+							this.circuitBreaker.onAbandoned();
+							return CompletableFuture.<HttpResponse<T>>failedFuture(cause);
+						}
+						recordOutcome(uri, payload, start[0], -1);
+						if(! this.retryPolicy.isRetryable(cause, idempotent) || attempt >= maxAttempts) {
+							return CompletableFuture.<HttpResponse<T>>failedFuture(cause);
+						}
+						Log.warn("Attempt {} failed for {} ({}) - retrying", attempt, uri, cause);
+						IntegrationMetrics.recordRetry(uri);
+						return afterDelay(this.retryPolicy.backoffMillis(attempt, null),
+								() -> sendWithRetryAsync(uri, method, contextType, payload, handler, attempt + 1));
+					}
+					recordOutcome(uri, payload, start[0], response.statusCode());
+					if(! this.retryPolicy.isRetryable(response.statusCode(), idempotent) || attempt >= maxAttempts) {
+						return CompletableFuture.completedFuture(response);
+					}
+					discardBody(response);
+					this.releaseSession();
+					Log.warn("Attempt {} got response code {} for {} - retrying", attempt, response.statusCode(), uri);
+					IntegrationMetrics.recordRetry(uri);
+					return afterDelay(this.retryPolicy.backoffMillis(attempt, response.headers().firstValue("Retry-After").orElse(null)),
+							() -> sendWithRetryAsync(uri, method, contextType, payload, handler, attempt + 1));
+				})
+				.thenCompose((next) -> next);
+	}
+	
+	private <T> CompletableFuture<T> afterDelay(long delayMillis, Supplier<CompletableFuture<T>> next) {
+		CompletableFuture<Void> delay = new CompletableFuture<Void>();
+		this.pool.getScheduler().schedule(() -> delay.complete(null), delayMillis, TimeUnit.MILLISECONDS);
+		return delay.thenCompose((v) -> next.get());
+	}
+	
+	/*
+	 * 	A request that failed before it was sent because it could not be built
+	 */
+	private static class RequestNotSentException extends UncheckedIOException {
+		private static final long serialVersionUID = 1L;
+		
+		RequestNotSentException(IOException cause) {
+			super(cause);
+		}
+	}
+	
+	private static boolean isRequestNotSent(Throwable e) {
+		if(e instanceof CompletionException && e.getCause() != null) {
+			e = e.getCause();
+		}
+		return e instanceof RequestNotSentException;
+	}
+	
+	private static Throwable unwrap(Throwable e) {
+		if(e instanceof CompletionException && e.getCause() != null) {
+			e = e.getCause();
+		}
+		return e instanceof UncheckedIOException ? e.getCause() : e;
+	}
+	
+	private static void discardBody(HttpResponse<?> response) {
+		if(response.body() instanceof InputStream) {
+			closeQuietly((InputStream) response.body());
+		}
+	}
+	
+	/*
+	 * 	Sign and build an Infor API request using HMAC authorization
+	 * 
+	 * 	@Return	Return request ready to be sent by the transport
+	 */
+	private HttpRequest buildRequest(String uri, String method, String contextType, RequestBody payload) throws IOException {
+		String user = this.apiDef.getUser();
+		String accessKey = this.apiDef.getAccessKey();
+		String xDapiDate = HmacSigner.computeXDapiDate();
+		String signature = payload != null ? payload.sign(this.signer, uri, method, xDapiDate)
+				: this.signer.sign(uri, method, xDapiDate, (String) null);
+		
+		String hmacAuthorization = createHmacAuthorization(user,accessKey,signature);
+		HttpRequest.Builder request = this.pool.getTransport().newRequest(uri)
+				.header("Authorization", hmacAuthorization)
+				.header("datakey", this.apiDef.getDatakey())
+				.header("x-dapi-date", xDapiDate)
+				.header("Content-type", contextType);
+			//System.out.println("Hmac Auth " + hmacAuthorization);
+		if(this.apiDef.acceptCompressedResponses()) {
+			request.header("Accept-Encoding", ContentEncoding.ACCEPT_ENCODING);
+		}
+		String uploadEncoding = this.apiDef.getUploadContentEncoding();
+		if(payload != null && uploadEncoding != null) {
+			request.header("Content-Encoding", uploadEncoding);
+		}
+		if(method.equals("POST")) {
+			request.POST(payload != null ? payload.publisher(uploadEncoding, (bytes) -> IntegrationMetrics.recordWireBytesSent(uri, bytes)) : BodyPublishers.noBody());
+		} else {
+			request.method(method, BodyPublishers.noBody());
+		}
+		return request.build();
+	}
+	
+	/*
+	 * 	@Return	Return body of a successful response, or empty string if the server returned an error
+	 */
+	private static String readResponse(String uri, HttpResponse<String> response) {
+		if(Log.isEnabled(Log.Level.DEBUG)) {
+			Log.debug("Response Code => {} for {}", response.statusCode(), uri);
+		}
+		if(response.statusCode() >= 400) {
+			Log.warn("Request failed with response code {} for {}", response.statusCode(), uri);
+			return "";
+		}
+		return response.body();
+	}
+	
+	/*
+	 * 	@Return	Return body stream of a successful response, or null (with the body closed) if the server returned an error
+	 */
+	private static InputStream readStreamResponse(String uri, HttpResponse<InputStream> response) {
+		if(Log.isEnabled(Log.Level.DEBUG)) {
+			Log.debug("Response Code => {} for {}", response.statusCode(), uri);
+		}
+		if(response.statusCode() >= 400) {
+			Log.warn("Request failed with response code {} for {}", response.statusCode(), uri);
+			closeQuietly(response.body());
+			return null;
+		}
+		return new IntegrationMetrics.MeteredInputStream(response.body(), (bytes) -> IntegrationMetrics.recordBytesReceived(uri, bytes));
+	}
+	
+	/*
+	 * 	Response body stream that gives its session back to the limiter, once, when it is closed
+	 */
+	private class SessionReleasingInputStream extends FilterInputStream {
+		private final AtomicBoolean released = new AtomicBoolean(false);
+		
+		SessionReleasingInputStream(InputStream in) {
+			super(in);
+		}
+		
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				if(released.compareAndSet(false, true)) {
+					releaseSession();
+				}
+			}
+		}
+	}
+	
+	/*
+	 * 	Feed a request's outcome to the metrics, the circuit breaker and the adaptive concurrency limit, if enabled
+	 * 	Throttling (429), server errors (5xx) and requests that failed to complete (-1) count as failures
+	 * 
+	 * 	@Param	uri			request uri
+	 * 	@Param	payload		request payload, or null
+	 * 	@Param	start		System.nanoTime when the request was sent
+	 * 	@Param	statusCode	response code, or -1 if no response was received
+	 */
+	private void recordOutcome(String uri, RequestBody payload, long start, int statusCode) {
+		IntegrationMetrics.recordRequest(uri, System.nanoTime() - start, statusCode, payload == null ? 0 : payload.length());
+		boolean failed = statusCode == -1 || statusCode == 429 || statusCode >= 500;
+		if(failed) {
+			this.circuitBreaker.onFailure();
+		} else {
+			this.circuitBreaker.onSuccess();
+		}
+		AdaptiveConcurrencyLimit limit = this.adaptiveLimit;
+		if(limit == null) {
+			return;
+		}
+		if(failed) {
+			limit.onDropped();
+		} else if(payload != null) {
+			limit.onSuccess();
+		} else {
+			limit.onSuccess(IntegrationMetrics.Endpoint.of(uri), System.nanoTime() - start);
+		}
+	}
+	
+	private static void closeQuietly(InputStream in) {
+		try {
+			in.close();
+		} catch (IOException e) {
+			// Nothing more to read
+		}
+	}
+	
+	private static void reportRequestFailure(String uri, Throwable e) {
+		if(e instanceof ConnectException) {
+			Log.error("Cannot find host of {}", uri);
+		} else {
+			Log.error("Request to " + uri + " failed", e);
+		}
+	}
+	
+	/*
+	 * 	Create Integration API Authorization header value
+	 * 
+	 * 	@Param	userId		username
+	 * 	@Param	accessKey	HMAC user defined access key
+	 * 	@Param	signingBase	Signing base hash as calculated
+	 * 
+	 * 	@Return	Return value of Authorization header to send HMAC API request
+	 */
+	private static String createHmacAuthorization(String userId, String accessKey, String signingBase) {
+		return "HMAC_1 " + accessKey + ":" + signingBase + ":" + userId;
+	}}
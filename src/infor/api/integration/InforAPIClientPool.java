@@ -0,0 +1,69 @@
+package infor.api.integration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/*
+ * 	Resources shared by every InforAPIClient built from it, so one process can talk to many tenants
+ * 		transport		one HttpClient - connections and TLS sessions to a host are reused by every tenant
+ * 		scheduler		one thread runs retry and circuit breaker waits and upload status polls for every tenant
+ * 		global budget	a SessionLimiter every request takes a session from, after its own tenant's limiter,
+ * 						so the sum of all tenants' sessions never exceeds maxTotalSessions
+ * 	Each client still enforces its own maxConcurrentSessions, retries, circuit breaker and signing secret
+ */
+public class InforAPIClientPool {
+	private final InforHttpTransport transport;
+	private final SessionLimiter globalSessions;
+	private final ScheduledExecutorService scheduler;
+
+	/*
+	 * 	@Param	poolDef				Api definition the transport settings (http version, timeouts, async threads) are read from
+	 * 	@Param	maxTotalSessions	Most sessions open at once across every client of the pool
+	 */
+	public InforAPIClientPool(InforAPIDefinition poolDef, int maxTotalSessions) {
+		this.globalSessions = new SessionLimiter(maxTotalSessions);
+		this.transport = new InforHttpTransport(poolDef, Math.max(poolDef.getConnectionPoolSize(), maxTotalSessions));
+		this.scheduler = Executors.newSingleThreadScheduledExecutor((r) -> {
+			Thread t = new Thread(r, "infor-api-scheduler");
+			t.setDaemon(true);
+			return t;
+		});
+		IntegrationMetrics.setSessionGauges(() -> this.globalSessions.getInFlight(), () -> this.globalSessions.getLimit());
+	}
+
+	/*
+	 * 	Build a client for one tenant - its datakey, user, keys, host and session limits come from tenantDef
+	 *
+	 * 	@Param	tenantDef	Api definition of the tenant
+	 * 	@Return	Return client sharing this pool's transport, scheduler and session budget
+	 */
+	public InforAPIClient newClient(InforAPIDefinition tenantDef) {
+		return new InforAPIClient(tenantDef, this);
+	}
+
+	/*
+	 * 	Stop the shared scheduler; clients of the pool must not be used afterwards
+	 */
+	public void shutdown() {
+		this.scheduler.shutdownNow();
+	}
+
+	InforHttpTransport getTransport() {
+		return this.transport;
+	}
+
+	SessionLimiter getGlobalSessions() {
+		return this.globalSessions;
+	}
+
+	public ScheduledExecutorService getScheduler() {
+		return this.scheduler;
+	}
+
+	public int getMaxTotalSessions() {
+		return this.globalSessions.getLimit();
+	}
+
+	public int getSessionsInFlight() {
+		return this.globalSessions.getInFlight();
+	}
+}
@@ -1,4 +1,6 @@
 package infor.api.integration;
+import java.net.http.HttpClient;
+import java.util.Locale;
 import java.util.Properties;
 /*
  * 	Define authorization and connection points to the Infor API
@@ -20,31 +22,84 @@ public class InforAPIDefinition {
 	private String secret;
 	//Default Concurrent Sessions is 5
 	private Integer maxConcurrentSessions = 5;
+	//Optional - run each work item on its own virtual thread; HTTP sessions stay capped at maxConcurrentSessions
+	private boolean useVirtualThreads = false;
+	//Default work items in flight when running on virtual threads
+	private Integer maxConcurrentWorkItems = 1000;
+	//HTTP transport - prefer HTTP/2 and fall back to HTTP/1.1 where the host does not support it
+	private HttpClient.Version httpVersion = HttpClient.Version.HTTP_2;
+	//Defaults to the most sessions that may be open at once
+	private Integer connectionPoolSize;
+	private Integer keepAliveTimeoutSeconds = 300;
+	private Integer connectTimeoutSeconds = 30;
+	private Integer requestTimeoutSeconds = 300;
+	//Optional - number of threads completing asynchronous requests
+	private Integer asyncExecutorThreads;
+	//Optional - adjust concurrent sessions from observed latency and throttling, starting at maxConcurrentSessions
+	private boolean adaptiveConcurrency = false;
+	private Integer minConcurrentSessions = 1;
+	//Defaults to maxConcurrentSessions - the limit only grows past the sessions configured if a ceiling is set
+	private Integer maxConcurrentSessionsCeiling;
+	//Optional - with several tenants in one process, the most sessions open at once across all of them
+	private Integer maxTotalConcurrentSessions;
+	//Retry failed requests with jittered exponential backoff; stop sending to a host that keeps failing
+	private Integer maxRequestAttempts = 4;
+	private Integer retryBaseDelayMillis = 500;
+	private Integer retryMaxDelayMillis = 30000;
+	private Integer circuitBreakerFailureThreshold = 10;
+	private Integer circuitBreakerOpenSeconds = 30;
+	//Ask for gzip or deflate compressed responses; optionally compress upload bodies with uploadContentEncoding
+	private boolean acceptCompressedResponses = true;
+	private String uploadContentEncoding;
+	//Request metrics are published over JMX; set metricsPrometheusFile to also write them in Prometheus text format
+	private boolean metricsJmx = true;
+	private String metricsPrometheusFile;
+	private Integer metricsWriteIntervalSeconds = 15;
+	//Per request and per document messages are DEBUG; at INFO the console shows a progress line every progressIntervalSeconds
+	private Log.Level logLevel = Log.Level.INFO;
+	private String logFile;
+	private Integer progressIntervalSeconds = 5;
+	//Outbox list responses are streamed through StAX by default; set outboxListParser=jaxb to unmarshal them whole
+	private boolean useJaxbOutboxListParser = false;
 	
 	public InforAPIDefinition(Properties propFile) {
+		this(propFile, true);
+	}
+	
+	/*
+	 * 	@Param	propFile			properties read from config.properties
+	 * 	@Param	requireCredentials	false for a definition only read for process and transport settings - the
+	 * 								shared settings of several tenants, whose credentials are in their own files -
+	 * 								so missing credentials, host and maxConcurrentSessions are not reported
+	 */
+	public InforAPIDefinition(Properties propFile, boolean requireCredentials) {
 		this.datakey = propFile.getProperty("datakey");
 		this.accessKey = propFile.getProperty("accessKey");
 		this.user = propFile.getProperty("user");
 		this.secret = propFile.getProperty("secret");
 		this.host = propFile.getProperty("host");
-		if(this.datakey == null) {
-			System.out.println("Datakey needs to be defined in config file");
-		}
-		if(this.accessKey == null) {
-			System.out.println("AccessKey needs to be defined in config file");
-		}
-		if(this.user == null) {
-			System.out.println("User needs to be defined in config file");
-		}
-		if(this.secret == null) {
-			System.out.println("Secret needs to be defined in config file");
-		}
-		if(this.host == null) {
-			System.out.println("Host needs to be defined in config file");
+		if(requireCredentials) {
+			if(this.datakey == null) {
+				System.out.println("Datakey needs to be defined in config file");
+			}
+			if(this.accessKey == null) {
+				System.out.println("AccessKey needs to be defined in config file");
+			}
+			if(this.user == null) {
+				System.out.println("User needs to be defined in config file");
+			}
+			if(this.secret == null) {
+				System.out.println("Secret needs to be defined in config file");
+			}
+			if(this.host == null) {
+				System.out.println("Host needs to be defined in config file");
+			}
 		}
 		String s = propFile.getProperty("maxConcurrentSessions");
 		if(s == null) {
-			System.out.println("maxConcurrentSessions property needs to be defined");
+			if(requireCredentials) {
+				System.out.println("maxConcurrentSessions property needs to be defined");
+			}
 		} else {
 			try {
 				this.maxConcurrentSessions = Integer.parseInt(s);
@@ -52,6 +107,69 @@ public class InforAPIDefinition {
 				System.out.println("maxConcurrentSessions property must be a valid integer");
 			}
 		}
+		this.useVirtualThreads = Boolean.parseBoolean(propFile.getProperty("useVirtualThreads"));
+		this.maxConcurrentWorkItems = parseOptionalInteger(propFile, "maxConcurrentWorkItems", this.maxConcurrentWorkItems);
+		s = propFile.getProperty("httpVersion");
+		if(s != null) {
+			try {
+				this.httpVersion = HttpClient.Version.valueOf(s);
+			}catch(Exception e) {
+				System.out.println("httpVersion property must be either HTTP_2 or HTTP_1_1");
+			}
+		}
+		this.keepAliveTimeoutSeconds = parseOptionalInteger(propFile, "keepAliveTimeoutSeconds", this.keepAliveTimeoutSeconds);
+		this.connectTimeoutSeconds = parseOptionalInteger(propFile, "connectTimeoutSeconds", this.connectTimeoutSeconds);
+		this.requestTimeoutSeconds = parseOptionalInteger(propFile, "requestTimeoutSeconds", this.requestTimeoutSeconds);
+		this.asyncExecutorThreads = parseOptionalInteger(propFile, "asyncExecutorThreads", null);
+		this.useJaxbOutboxListParser = "jaxb".equalsIgnoreCase(propFile.getProperty("outboxListParser"));
+		this.adaptiveConcurrency = Boolean.parseBoolean(propFile.getProperty("adaptiveConcurrency"));
+		this.minConcurrentSessions = parseOptionalInteger(propFile, "minConcurrentSessions", this.minConcurrentSessions);
+		this.maxConcurrentSessionsCeiling = parseOptionalInteger(propFile, "maxConcurrentSessionsCeiling", null);
+		this.connectionPoolSize = parseOptionalInteger(propFile, "connectionPoolSize", getSessionCapacity());
+		this.maxTotalConcurrentSessions = parseOptionalInteger(propFile, "maxTotalConcurrentSessions", null);
+		this.maxRequestAttempts = parseOptionalInteger(propFile, "maxRequestAttempts", this.maxRequestAttempts);
+		this.retryBaseDelayMillis = parseOptionalInteger(propFile, "retryBaseDelayMillis", this.retryBaseDelayMillis);
+		this.retryMaxDelayMillis = parseOptionalInteger(propFile, "retryMaxDelayMillis", this.retryMaxDelayMillis);
+		this.circuitBreakerFailureThreshold = parseOptionalInteger(propFile, "circuitBreakerFailureThreshold", this.circuitBreakerFailureThreshold);
+		this.circuitBreakerOpenSeconds = parseOptionalInteger(propFile, "circuitBreakerOpenSeconds", this.circuitBreakerOpenSeconds);
+		s = propFile.getProperty("acceptCompressedResponses");
+		if(s != null) {
+			this.acceptCompressedResponses = Boolean.parseBoolean(s);
+		}
+		s = propFile.getProperty("metricsJmx");
+		if(s != null) {
+			this.metricsJmx = Boolean.parseBoolean(s);
+		}
+		this.metricsPrometheusFile = propFile.getProperty("metricsPrometheusFile");
+		this.metricsWriteIntervalSeconds = parseOptionalInteger(propFile, "metricsWriteIntervalSeconds", this.metricsWriteIntervalSeconds);
+		this.logLevel = Log.parseLevel(propFile.getProperty("logLevel"), this.logLevel);
+		this.logFile = propFile.getProperty("logFile");
+		this.progressIntervalSeconds = parseOptionalInteger(propFile, "progressIntervalSeconds", this.progressIntervalSeconds);
+		s = propFile.getProperty("uploadContentEncoding");
+		if(s != null && ! s.trim().isEmpty() && ! s.trim().equalsIgnoreCase("none")) {
+			s = s.trim().toLowerCase(Locale.ROOT);
+			if(s.equals(ContentEncoding.GZIP) || s.equals(ContentEncoding.DEFLATE)) {
+				this.uploadContentEncoding = s;
+			} else {
+				System.out.println("uploadContentEncoding property must be either gzip, deflate or none");
+			}
+		}
+	}
+	
+	/*
+	 * 	Read an optional integer property, keeping the default if it is missing or malformed
+	 */
+	private static Integer parseOptionalInteger(Properties propFile, String key, Integer defaultVal) {
+		String s = propFile.getProperty(key);
+		if(s == null) {
+			return defaultVal;
+		}
+		try {
+			return Integer.parseInt(s);
+		}catch(Exception e) {
+			System.out.println(key + " property must be a valid integer");
+		}
+		return defaultVal;
 	}
 	
 	public String getDatakey() {
@@ -72,4 +190,97 @@ public class InforAPIDefinition {
 	public Integer getMaxConcurrentSessions() {
 		return this.maxConcurrentSessions;
 	}
-}
\ No newline at end of file
+	public boolean useVirtualThreads() {
+		return this.useVirtualThreads;
+	}
+	public Integer getMaxConcurrentWorkItems() {
+		return this.maxConcurrentWorkItems;
+	}
+	public HttpClient.Version getHttpVersion() {
+		return this.httpVersion;
+	}
+	public Integer getConnectionPoolSize() {
+		return this.connectionPoolSize;
+	}
+	public Integer getKeepAliveTimeoutSeconds() {
+		return this.keepAliveTimeoutSeconds;
+	}
+	public Integer getConnectTimeoutSeconds() {
+		return this.connectTimeoutSeconds;
+	}
+	public Integer getRequestTimeoutSeconds() {
+		return this.requestTimeoutSeconds;
+	}
+	public Integer getAsyncExecutorThreads() {
+		return this.asyncExecutorThreads;
+	}
+	public boolean useJaxbOutboxListParser() {
+		return this.useJaxbOutboxListParser;
+	}
+	public boolean useAdaptiveConcurrency() {
+		return this.adaptiveConcurrency;
+	}
+	public Integer getMinConcurrentSessions() {
+		return this.minConcurrentSessions;
+	}
+	public Integer getMaxConcurrentSessionsCeiling() {
+		return this.maxConcurrentSessionsCeiling != null ? this.maxConcurrentSessionsCeiling : this.maxConcurrentSessions;
+	}
+	/*
+	 * 	Most sessions that may be open at once - the ceiling when the limit is adaptive
+	 */
+	public Integer getSessionCapacity() {
+		return this.adaptiveConcurrency ? getMaxConcurrentSessionsCeiling() : this.maxConcurrentSessions;
+	}
+	/*
+	 * 	@Return	Return the global session budget shared by every tenant, or null if it is not set
+	 */
+	public Integer getMaxTotalConcurrentSessions() {
+		return this.maxTotalConcurrentSessions;
+	}
+	public Integer getMaxRequestAttempts() {
+		return this.maxRequestAttempts;
+	}
+	public Integer getRetryBaseDelayMillis() {
+		return this.retryBaseDelayMillis;
+	}
+	public Integer getRetryMaxDelayMillis() {
+		return this.retryMaxDelayMillis;
+	}
+	public Integer getCircuitBreakerFailureThreshold() {
+		return this.circuitBreakerFailureThreshold;
+	}
+	public Integer getCircuitBreakerOpenSeconds() {
+		return this.circuitBreakerOpenSeconds;
+	}
+	public boolean acceptCompressedResponses() {
+		return this.acceptCompressedResponses;
+	}
+	/*
+	 * 	@Return	gzip or deflate if upload bodies are to be compressed, else null
+	 */
+	public String getUploadContentEncoding() {
+		return this.uploadContentEncoding;
+	}
+	public boolean useMetricsJmx() {
+		return this.metricsJmx;
+	}
+	public String getMetricsPrometheusFile() {
+		return this.metricsPrometheusFile;
+	}
+	public Integer getMetricsWriteIntervalSeconds() {
+		return this.metricsWriteIntervalSeconds;
+	}
+	
+	public Log.Level getLogLevel() {
+		return this.logLevel;
+	}
+	
+	public String getLogFile() {
+		return this.logFile;
+	}
+	
+	public Integer getProgressIntervalSeconds() {
+		return this.progressIntervalSeconds;
+	}
+}
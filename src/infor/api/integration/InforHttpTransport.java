@@ -0,0 +1,90 @@
+package infor.api.integration;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+
+/*
+ * 	Shared HTTP transport for all Infor API requests
+ * 	One HttpClient is kept for the life of the process so TCP connections and TLS sessions are reused
+ * 	across list, fetch, delete, upload and status calls. Connections are kept alive in a bounded pool
+ * 	and HTTP/2 is negotiated where the host supports it, multiplexing requests over one connection
+ */
+public class InforHttpTransport {
+	static final String POOL_SIZE_PROPERTY = "jdk.httpclient.connectionPoolSize";
+	static final String KEEP_ALIVE_PROPERTY = "jdk.httpclient.keepalive.timeout";
+	
+	private final HttpClient client;
+	private final Duration requestTimeout;
+	
+	public InforHttpTransport(InforAPIDefinition apiDef) {
+		this(apiDef, apiDef.getConnectionPoolSize());
+	}
+	
+	/*
+	 * 	Same as above, but size the connection pool for poolSize sessions - a transport shared by several
+	 * 	tenants needs room for all of their sessions
+	 */
+	public InforHttpTransport(InforAPIDefinition apiDef, int poolSize) {
+		//The JDK client reads its pool settings from system properties once, when the first client is built
+		//Leave any value passed on the command line in place
+		setPropertyIfAbsent(POOL_SIZE_PROPERTY, Integer.toString(poolSize));
+		setPropertyIfAbsent(KEEP_ALIVE_PROPERTY, Integer.toString(apiDef.getKeepAliveTimeoutSeconds()));
+		this.requestTimeout = Duration.ofSeconds(apiDef.getRequestTimeoutSeconds());
+		HttpClient.Builder builder = HttpClient.newBuilder()
+				.version(apiDef.getHttpVersion())
+				.connectTimeout(Duration.ofSeconds(apiDef.getConnectTimeoutSeconds()))
+				.followRedirects(HttpClient.Redirect.NORMAL);
+		//Asynchronous completions run on a small fixed carrier pool if one is configured, else the JDK's default
+		if(apiDef.getAsyncExecutorThreads() != null) {
+			builder.executor(Executors.newFixedThreadPool(apiDef.getAsyncExecutorThreads(), (r) -> {
+				Thread t = new Thread(r, "infor-api-async");
+				t.setDaemon(true);
+				return t;
+			}));
+		}
+		this.client = builder.build();
+	}
+	
+	/*
+	 * 	Start building a request against uri with this transport's request timeout applied
+	 * 
+	 * 	@Param	uri		Infor API request uri
+	 * 	@Return	Return request builder; caller sets method, headers and body
+	 */
+	public HttpRequest.Builder newRequest(String uri) {
+		return HttpRequest.newBuilder(URI.create(uri)).timeout(this.requestTimeout);
+	}
+	
+	/*
+	 * 	Send a request over a pooled connection without blocking the calling thread
+	 * 
+	 * 	@Param	request		request built from newRequest
+	 * 	@Param	handler		how the response body is to be consumed
+	 * 	@Return	Return a future completed with the server's response
+	 */
+	public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+		return this.client.sendAsync(request, handler);
+	}
+	
+	/*
+	 * 	Send a request over a pooled connection, blocking until the response headers have arrived
+	 * 
+	 * 	@Param	request		request built from newRequest
+	 * 	@Param	handler		how the response body is to be consumed
+	 * 	@Return	Return the server's response
+	 */
+	public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException, InterruptedException {
+		return this.client.send(request, handler);
+	}
+	
+	private static void setPropertyIfAbsent(String key, String value) {
+		if(System.getProperty(key) == null) {
+			System.setProperty(key, value);
+		}
+	}
+}
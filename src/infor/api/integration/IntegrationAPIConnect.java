@@ -1,11 +1,15 @@
 package infor.api.integration;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
+import java.nio.file.Path;
 
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Source;
@@ -17,6 +21,7 @@ import javax.xml.transform.stream.StreamSource;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
 
 import infor.api.resources.IntegrationQueryResult;
@@ -28,6 +33,8 @@ import infor.api.resources.IntegrationUploadResponse;
  * 	Connect the tool access points - IntegrationAPIUploader and Downloader - to the InforAPI class
  * 	to execute the server requests. Functions here will process the results, in some cases creating
  * 	GSON object, Java objects, or  XML Document Objects to represent the server's responses
+ * 	Each call has a form taking the InforAPIClient of the tenant to send it as; without one it goes
+ * 	through the default client bound by InforAPI.setApiDefinition
  */
 public class IntegrationAPIConnect {
 	private static final Gson gson = new Gson();
@@ -38,27 +45,68 @@ public class IntegrationAPIConnect {
 	 * 	@Return	Return a list of IntegrationQueryResultNodes from the servers response to pollOutbox API call
 	 */
 	public static List<IntegrationQueryResultNode> pollOutbox() {
-		IntegrationQueryResult outboxResult =  InforAPI.executeOutboxListReq();
+		return pollOutbox(InforAPI.getDefaultClient());
+	}
+	
+	public static List<IntegrationQueryResultNode> pollOutbox(InforAPIClient client) {
+		IntegrationQueryResult outboxResult =  client.executeOutboxListReq();
 		return outboxResult.getResults();
 	}
 	
+	/*
+	 * 	Iterate over every document in the Integration API outbox, following the server's paging
+	 * 	The next page is requested while the current page's documents are being handed out
+	 * 
+	 * 	@Return	Return iterator over the IntegrationQueryResultNodes of all outbox pages
+	 */
+	public static Iterator<IntegrationQueryResultNode> pollOutboxPages() {
+		return pollOutboxPages(InforAPI.getDefaultClient());
+	}
+	
+	public static Iterator<IntegrationQueryResultNode> pollOutboxPages(InforAPIClient client) {
+		return new OutboxPager(client);
+	}
+	
 	/*
 	 * 	Fetch a document via its messageId from the server's outbox via Integration API
 	 * 	Print the fetched XML representation of said document into a file
 	 */
 	public static String fetchDocument(IntegrationQueryResultNode node) {
-		String rawXmlDoc = InforAPI.fetchIntegrationDocument(node.getActionId());
+		return fetchDocument(InforAPI.getDefaultClient(), node);
+	}
+	
+	public static String fetchDocument(InforAPIClient client, IntegrationQueryResultNode node) {
+		String rawXmlDoc = client.fetchIntegrationDocument(node.getActionId());
 		return rawXmlDoc;
 	}
 	
+	/*
+	 * 	Fetch a document via its messageId from the server's outbox as a stream, without reading it into memory
+	 * 	The caller must close the stream
+	 */
+	public static InputStream openDocument(IntegrationQueryResultNode node) {
+		return openDocument(InforAPI.getDefaultClient(), node);
+	}
+	
+	public static InputStream openDocument(InforAPIClient client, IntegrationQueryResultNode node) {
+		return client.openIntegrationDocument(node.getActionId());
+	}
+	
 	/*
 	 * 	Using a node's messageId, delete document from the outbox
+	 * 	@Return	Return true if the server accepted the delete
 	 */
-	public static void deleteDocument(IntegrationQueryResultNode node) {
-		int responseCode = InforAPI.deleteIntegrationDocument(node.getActionId());
+	public static boolean deleteDocument(IntegrationQueryResultNode node) {
+		return deleteDocument(InforAPI.getDefaultClient(), node);
+	}
+	
+	public static boolean deleteDocument(InforAPIClient client, IntegrationQueryResultNode node) {
+		int responseCode = client.deleteIntegrationDocument(node.getActionId());
 		if(responseCode == 202) {
-			System.out.println("Deleted message " + node.getActionId() + " from outbox");
+			Log.debug("Deleted message {} from outbox", node.getActionId());
+			return true;
 		}
+		return false;
 	}
 	
 	/*
@@ -69,14 +117,49 @@ public class IntegrationAPIConnect {
 	 * 					as defined in organizational profile adapter
 	 */
 	public static ArrayList<IntegrationUploadResponse> uploadDocument(String rawXml, String docType) {
-		String rawResponseJson = InforAPI.uploadIntegrationDocument(rawXml, docType);
-		JsonArray responseArray = new JsonParser().parse(rawResponseJson).getAsJsonArray();
+		return uploadDocument(InforAPI.getDefaultClient(), rawXml, docType);
+	}
+	
+	public static ArrayList<IntegrationUploadResponse> uploadDocument(InforAPIClient client, String rawXml, String docType) {
+		String rawResponseJson = client.uploadIntegrationDocument(rawXml, docType);
+		return parseUploadResponse(rawResponseJson);
+	}
+	
+	/*
+	 * 	Same as above, but stream the xml from a file - it is signed and sent without being read into memory
+	 * 
+	 * 	@Param	xmlFile	UTF-8 xml file to upload as is
+	 */
+	public static ArrayList<IntegrationUploadResponse> uploadDocument(Path xmlFile, String docType) {
+		return uploadDocument(InforAPI.getDefaultClient(), xmlFile, docType);
+	}
+	
+	public static ArrayList<IntegrationUploadResponse> uploadDocument(InforAPIClient client, Path xmlFile, String docType) {
+		String rawResponseJson = client.uploadIntegrationDocument(xmlFile, docType);
+		return parseUploadResponse(rawResponseJson);
+	}
+	
+	/*
+	 * 	An upload that failed after every retry comes back as an empty response - return an empty list for it
+	 */
+	private static ArrayList<IntegrationUploadResponse> parseUploadResponse(String rawResponseJson) {
 		ArrayList<IntegrationUploadResponse> messageList = new ArrayList<IntegrationUploadResponse>();
+		JsonElement parsed;
+		try {
+			parsed = new JsonParser().parse(rawResponseJson);
+		} catch (JsonParseException e) {
+			Log.warn("Cannot parse upload response {}", rawResponseJson);
+			return messageList;
+		}
+		if(! parsed.isJsonArray()) {
+			return messageList;
+		}
+		JsonArray responseArray = parsed.getAsJsonArray();
 		for(JsonElement jEl : responseArray) {
 			messageList.add( gson.fromJson(jEl, IntegrationUploadResponse.class));
 		}
 		for(IntegrationUploadResponse toPrint : messageList) {
-			System.out.println( toPrint );
+			Log.debug("{}", toPrint);
 		}
 		return messageList;
 	}
@@ -88,9 +171,86 @@ public class IntegrationAPIConnect {
 	 * 	@Return	Return server response as gson representational object
 	 */
 	public static IntegrationStatusResponse fetchDocumentStatus(Integer messageId) {
-		String rawJsonResponse = InforAPI.fetchMessageStatus(messageId);
-		IntegrationStatusResponse response = gson.fromJson(rawJsonResponse, IntegrationStatusResponse.class);
-		System.out.println("STATE OF " + messageId + " IS " + response.getState());
+		return fetchDocumentStatus(InforAPI.getDefaultClient(), messageId);
+	}
+	
+	public static IntegrationStatusResponse fetchDocumentStatus(InforAPIClient client, Integer messageId) {
+		return client.fetchMessageStatus(messageId, (responseCode, rawJsonResponse) -> parseStatusResponse(messageId, responseCode, rawJsonResponse));
+	}
+	
+	/*
+	 * 	A failed request or a body that is not a status leaves the state unknown; the response code
+	 * 	tells callers whether asking again can change that - see IntegrationStatusResponse.isRejected
+	 */
+	private static IntegrationStatusResponse parseStatusResponse(Integer messageId, int responseCode, String rawJsonResponse) {
+		IntegrationStatusResponse response = null;
+		try {
+			response = gson.fromJson(rawJsonResponse, IntegrationStatusResponse.class);
+		} catch (JsonParseException e) {
+			Log.warn("Cannot parse status response of message {}: {}", messageId, rawJsonResponse);
+		}
+		if(response == null) {
+			response = new IntegrationStatusResponse();
+		}
+		response.setResponseCode(responseCode);
+		Log.debug("STATE OF {} IS {}", messageId, response.getState());
 		return response;
 	}
-}
+	
+	/*
+	 * 	Asynchronous versions of the calls above - each future completes with the same result the
+	 * 	blocking call returns, so requests can be chained (fetch -> write -> delete, upload -> status)
+	 * 	without holding a thread while a request is outstanding
+	 */
+	public static CompletableFuture<List<IntegrationQueryResultNode>> pollOutboxAsync() {
+		return pollOutboxAsync(InforAPI.getDefaultClient());
+	}
+	
+	public static CompletableFuture<List<IntegrationQueryResultNode>> pollOutboxAsync(InforAPIClient client) {
+		return client.executeOutboxListReqAsync(0).thenApply(IntegrationQueryResult::getResults);
+	}
+	
+	public static CompletableFuture<String> fetchDocumentAsync(IntegrationQueryResultNode node) {
+		return fetchDocumentAsync(InforAPI.getDefaultClient(), node);
+	}
+	
+	public static CompletableFuture<String> fetchDocumentAsync(InforAPIClient client, IntegrationQueryResultNode node) {
+		return client.fetchIntegrationDocumentAsync(node.getActionId());
+	}
+	
+	public static CompletableFuture<Void> deleteDocumentAsync(IntegrationQueryResultNode node) {
+		return deleteDocumentAsync(InforAPI.getDefaultClient(), node);
+	}
+	
+	public static CompletableFuture<Void> deleteDocumentAsync(InforAPIClient client, IntegrationQueryResultNode node) {
+		return client.deleteIntegrationDocumentAsync(node.getActionId()).thenAccept((responseCode) -> {
+			if(responseCode == 202) {
+				Log.debug("Deleted message {} from outbox", node.getActionId());
+			}
+		});
+	}
+	
+	public static CompletableFuture<ArrayList<IntegrationUploadResponse>> uploadDocumentAsync(String rawXml, String docType) {
+		return uploadDocumentAsync(InforAPI.getDefaultClient(), rawXml, docType);
+	}
+	
+	public static CompletableFuture<ArrayList<IntegrationUploadResponse>> uploadDocumentAsync(InforAPIClient client, String rawXml, String docType) {
+		return client.uploadIntegrationDocumentAsync(rawXml, docType).thenApply(IntegrationAPIConnect::parseUploadResponse);
+	}
+	
+	public static CompletableFuture<ArrayList<IntegrationUploadResponse>> uploadDocumentAsync(Path xmlFile, String docType) {
+		return uploadDocumentAsync(InforAPI.getDefaultClient(), xmlFile, docType);
+	}
+	
+	public static CompletableFuture<ArrayList<IntegrationUploadResponse>> uploadDocumentAsync(InforAPIClient client, Path xmlFile, String docType) {
+		return client.uploadIntegrationDocumentAsync(xmlFile, docType).thenApply(IntegrationAPIConnect::parseUploadResponse);
+	}
+	
+	public static CompletableFuture<IntegrationStatusResponse> fetchDocumentStatusAsync(Integer messageId) {
+		return fetchDocumentStatusAsync(InforAPI.getDefaultClient(), messageId);
+	}
+	
+	public static CompletableFuture<IntegrationStatusResponse> fetchDocumentStatusAsync(InforAPIClient client, Integer messageId) {
+		return client.fetchMessageStatusAsync(messageId, (responseCode, rawJsonResponse) -> parseStatusResponse(messageId, responseCode, rawJsonResponse));
+	}
+}
\ No newline at end of file
@@ -0,0 +1,414 @@
+package infor.api.integration;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.LongConsumer;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/*
+ * 	Latency, throughput and error metrics for every Integration API endpoint
+ *
+ * 	InforAPI records each attempt of each request against the endpoint it was sent to: a latency
+ * 	histogram, bytes sent and received, errors and retries. Bytes are counted twice - as the payload before
+ * 	compression and after decompression, and as they cross the wire - so the saving of compressed uploads and
+ * 	responses shows as the difference between the two. The work scheduler records how many work
+ * 	items are queued and running, and the downloader how long writing documents to disk takes
+ * 	Everything is recorded with LongAdders so recording never blocks a request thread
+ *
+ * 	Metrics are published as JMX MBeans under infor.api.integration, one per endpoint plus one for the
+ * 	session and work item gauges, and can also be written to a Prometheus text format file every few
+ * 	seconds for a node exporter textfile collector to pick up
+ */
+public class IntegrationMetrics {
+	public static final String JMX_DOMAIN = "infor.api.integration";
+
+	public enum Endpoint {
+		LIST, FETCH, DELETE, UPLOAD, STATUS, OTHER;
+
+		/*
+		 * 	@Return	Return the endpoint an Integration API request uri is sent to
+		 */
+		static Endpoint of(String uri) {
+			if(uri.contains("/outbox/list")) {
+				return LIST;
+			} else if(uri.contains("/outbox/fetch/")) {
+				return FETCH;
+			} else if(uri.contains("/outbox/delete/")) {
+				return DELETE;
+			} else if(uri.contains("/inbound/upload")) {
+				return UPLOAD;
+			} else if(uri.contains("/inbound/status/")) {
+				return STATUS;
+			}
+			return OTHER;
+		}
+
+		String label() {
+			return name().toLowerCase(Locale.ROOT);
+		}
+	}
+
+	public interface EndpointMetricsMBean {
+		long getRequestCount();
+		long getErrorCount();
+		long getRetryCount();
+		long getBytesSent();
+		long getBytesReceived();
+		long getWireBytesSent();
+		long getWireBytesReceived();
+		double getMeanLatencyMillis();
+		double getP50LatencyMillis();
+		double getP95LatencyMillis();
+		double getP99LatencyMillis();
+		double getMaxLatencyMillis();
+	}
+
+	public interface WorkMetricsMBean {
+		int getSessionsInFlight();
+		int getSessionLimit();
+		int getWorkItemsQueued();
+		int getWorkItemsRunning();
+		long getWorkItemsCompleted();
+		long getDiskWriteCount();
+		long getDiskBytesWritten();
+		double getMeanDiskWriteMillis();
+		double getP99DiskWriteMillis();
+	}
+
+	static class EndpointMetrics implements EndpointMetricsMBean {
+		final LatencyHistogram latency = new LatencyHistogram();
+		final LongAdder errors = new LongAdder();
+		final LongAdder retries = new LongAdder();
+		final LongAdder bytesSent = new LongAdder();
+		final LongAdder bytesReceived = new LongAdder();
+		final LongAdder wireBytesSent = new LongAdder();
+		final LongAdder wireBytesReceived = new LongAdder();
+
+		public long getRequestCount() { return this.latency.getCount(); }
+		public long getErrorCount() { return this.errors.sum(); }
+		public long getRetryCount() { return this.retries.sum(); }
+		public long getBytesSent() { return this.bytesSent.sum(); }
+		public long getBytesReceived() { return this.bytesReceived.sum(); }
+		public long getWireBytesSent() { return this.wireBytesSent.sum(); }
+		public long getWireBytesReceived() { return this.wireBytesReceived.sum(); }
+		public double getMeanLatencyMillis() { return this.latency.getMeanMillis(); }
+		public double getP50LatencyMillis() { return this.latency.getPercentileMillis(0.5); }
+		public double getP95LatencyMillis() { return this.latency.getPercentileMillis(0.95); }
+		public double getP99LatencyMillis() { return this.latency.getPercentileMillis(0.99); }
+		public double getMaxLatencyMillis() { return this.latency.getMaxMillis(); }
+	}
+
+	static class WorkMetrics implements WorkMetricsMBean {
+		volatile IntSupplier sessionsInFlight = () -> 0;
+		volatile IntSupplier sessionLimit = () -> 0;
+		final AtomicInteger queued = new AtomicInteger();
+		final AtomicInteger running = new AtomicInteger();
+		final LongAdder completed = new LongAdder();
+		final LatencyHistogram diskWrites = new LatencyHistogram();
+		final LongAdder diskBytes = new LongAdder();
+
+		public int getSessionsInFlight() { return this.sessionsInFlight.getAsInt(); }
+		public int getSessionLimit() { return this.sessionLimit.getAsInt(); }
+		public int getWorkItemsQueued() { return this.queued.get(); }
+		public int getWorkItemsRunning() { return this.running.get(); }
+		public long getWorkItemsCompleted() { return this.completed.sum(); }
+		public long getDiskWriteCount() { return this.diskWrites.getCount(); }
+		public long getDiskBytesWritten() { return this.diskBytes.sum(); }
+		public double getMeanDiskWriteMillis() { return this.diskWrites.getMeanMillis(); }
+		public double getP99DiskWriteMillis() { return this.diskWrites.getPercentileMillis(0.99); }
+	}
+
+	private static final Map<Endpoint, EndpointMetrics> endpoints = new EnumMap<Endpoint, EndpointMetrics>(Endpoint.class);
+	private static final WorkMetrics work = new WorkMetrics();
+	private static boolean jmxRegistered;
+	private static ScheduledExecutorService prometheusWriter;
+
+	static {
+		for(Endpoint endpoint : Endpoint.values()) {
+			endpoints.put(endpoint, new EndpointMetrics());
+		}
+	}
+
+	/*
+	 * 	Record one attempt of a request
+	 *
+	 * 	@Param	uri			request uri; decides the endpoint
+	 * 	@Param	nanos		time from sending the request to receiving the response headers
+	 * 	@Param	statusCode	response code, or -1 if no response was received
+	 * 	@Param	bytesSent	UTF-8 bytes of the payload before any compression, 0 if none
+	 */
+	static void recordRequest(String uri, long nanos, int statusCode, long bytesSent) {
+		EndpointMetrics metrics = endpoints.get(Endpoint.of(uri));
+		metrics.latency.record(nanos);
+		if(statusCode == -1 || statusCode >= 400) {
+			metrics.errors.increment();
+		}
+		if(bytesSent > 0) {
+			metrics.bytesSent.add(bytesSent);
+		}
+	}
+
+	static void recordRetry(String uri) {
+		endpoints.get(Endpoint.of(uri)).retries.increment();
+	}
+
+	/*
+	 * 	@Param	bytes	response body bytes, after decompression
+	 */
+	static void recordBytesReceived(String uri, long bytes) {
+		endpoints.get(Endpoint.of(uri)).bytesReceived.add(bytes);
+	}
+
+	/*
+	 * 	@Param	bytes	request body bytes as sent on the wire, after any compression
+	 */
+	static void recordWireBytesSent(String uri, long bytes) {
+		endpoints.get(Endpoint.of(uri)).wireBytesSent.add(bytes);
+	}
+
+	/*
+	 * 	@Param	bytes	response body bytes as received on the wire, before decompression
+	 */
+	static void recordWireBytesReceived(String uri, long bytes) {
+		endpoints.get(Endpoint.of(uri)).wireBytesReceived.add(bytes);
+	}
+
+	static void setSessionGauges(IntSupplier sessionsInFlight, IntSupplier sessionLimit) {
+		work.sessionsInFlight = sessionsInFlight;
+		work.sessionLimit = sessionLimit;
+	}
+
+	/*
+	 * 	A work item has been handed to a worker pool
+	 */
+	public static void workSubmitted() {
+		work.queued.incrementAndGet();
+	}
+
+	/*
+	 * 	A worker has picked up a submitted work item
+	 */
+	public static void workStarted() {
+		work.queued.decrementAndGet();
+		work.running.incrementAndGet();
+	}
+
+	public static void workFinished() {
+		work.running.decrementAndGet();
+		work.completed.increment();
+	}
+
+	/*
+	 * 	Record a document written to disk
+	 *
+	 * 	@Param	nanos	time taken to write the document
+	 * 	@Param	bytes	bytes written
+	 */
+	public static void recordDiskWrite(long nanos, long bytes) {
+		work.diskWrites.record(nanos);
+		work.diskBytes.add(bytes);
+	}
+
+	/*
+	 * 	@Return	Return the live metrics of one endpoint, as published over JMX
+	 */
+	public static EndpointMetricsMBean getEndpointMetrics(Endpoint endpoint) {
+		return endpoints.get(endpoint);
+	}
+
+	/*
+	 * 	@Return	Return the live work queue metrics, as published over JMX
+	 */
+	public static WorkMetricsMBean getWorkMetrics() {
+		return work;
+	}
+
+	/*
+	 * 	Register the metrics MBeans with the platform MBean server; only the first call registers them
+	 */
+	public static synchronized void registerJmx() {
+		if(jmxRegistered) {
+			return;
+		}
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			for(Map.Entry<Endpoint, EndpointMetrics> e : endpoints.entrySet()) {
+				server.registerMBean(new StandardMBean(e.getValue(), EndpointMetricsMBean.class),
+						new ObjectName(JMX_DOMAIN + ":type=Endpoint,name=" + e.getKey().label()));
+			}
+			server.registerMBean(new StandardMBean(work, WorkMetricsMBean.class), new ObjectName(JMX_DOMAIN + ":type=Work"));
+			jmxRegistered = true;
+		} catch (JMException e) {
+			Log.warn("Cannot register metrics MBeans - {}", e.getMessage());
+		}
+	}
+
+	/*
+	 * 	Write the metrics to a Prometheus text format file every intervalSeconds until the process exits
+	 * 	Each write goes to a temporary file that is moved over the last, so a reader never sees half a file
+	 * 	Calling this again replaces the previous schedule
+	 *
+	 * 	@Param	file				file to write, typically *.prom in a node exporter textfile directory
+	 * 	@Param	intervalSeconds		seconds between writes
+	 */
+	public static synchronized void startPrometheusFileWriter(String file, int intervalSeconds) {
+		if(prometheusWriter != null) {
+			prometheusWriter.shutdownNow();
+		}
+		Path target = Paths.get(file);
+		prometheusWriter = Executors.newSingleThreadScheduledExecutor((r) -> {
+			Thread t = new Thread(r, "metrics-writer");
+			t.setDaemon(true);
+			return t;
+		});
+		prometheusWriter.scheduleWithFixedDelay(() -> writePrometheusFile(target), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+		//Write once more on the way out so the final counts are not lost
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> writePrometheusFile(target), "metrics-final-write"));
+	}
+
+	static void writePrometheusFile(Path target) {
+		Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+		try {
+			try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+				writePrometheus(writer);
+			}
+			Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			Log.warn("Cannot write metrics to {} - {}", target, e.getMessage());
+		}
+	}
+
+	/*
+	 * 	Write every metric in Prometheus text exposition format
+	 */
+	public static void writePrometheus(Writer out) throws IOException {
+		StringBuilder sb = new StringBuilder(8192);
+		sb.append("# HELP infor_api_request_duration_seconds Time from sending a request to its response headers\n");
+		sb.append("# TYPE infor_api_request_duration_seconds histogram\n");
+		for(Map.Entry<Endpoint, EndpointMetrics> e : endpoints.entrySet()) {
+			appendHistogram(sb, "infor_api_request_duration_seconds", "endpoint=\"" + e.getKey().label() + "\"", e.getValue().latency);
+		}
+		appendCounter(sb, "infor_api_request_errors_total", "Requests that failed or returned an error status", (m) -> m.errors.sum());
+		appendCounter(sb, "infor_api_request_retries_total", "Requests retried after a retryable failure", (m) -> m.retries.sum());
+		appendCounter(sb, "infor_api_bytes_sent_total", "Payload bytes sent, before compression", (m) -> m.bytesSent.sum());
+		appendCounter(sb, "infor_api_bytes_received_total", "Response body bytes received, after decompression", (m) -> m.bytesReceived.sum());
+		appendCounter(sb, "infor_api_wire_bytes_sent_total", "Request body bytes sent on the wire, after compression", (m) -> m.wireBytesSent.sum());
+		appendCounter(sb, "infor_api_wire_bytes_received_total", "Response body bytes received on the wire, before decompression", (m) -> m.wireBytesReceived.sum());
+		appendGauge(sb, "infor_api_sessions_in_flight", "Requests holding a session", work.getSessionsInFlight());
+		appendGauge(sb, "infor_api_session_limit", "Requests allowed to hold a session at once", work.getSessionLimit());
+		appendGauge(sb, "infor_api_work_items_queued", "Work items submitted but not yet picked up by a worker", work.getWorkItemsQueued());
+		appendGauge(sb, "infor_api_work_items_running", "Work items being run by a worker", work.getWorkItemsRunning());
+		sb.append("# HELP infor_api_work_items_completed_total Work items finished\n");
+		sb.append("# TYPE infor_api_work_items_completed_total counter\n");
+		sb.append("infor_api_work_items_completed_total ").append(work.getWorkItemsCompleted()).append('\n');
+		sb.append("# HELP infor_api_disk_write_duration_seconds Time to write a fetched document to disk\n");
+		sb.append("# TYPE infor_api_disk_write_duration_seconds histogram\n");
+		appendHistogram(sb, "infor_api_disk_write_duration_seconds", null, work.diskWrites);
+		sb.append("# HELP infor_api_disk_bytes_written_total Bytes of fetched documents written to disk\n");
+		sb.append("# TYPE infor_api_disk_bytes_written_total counter\n");
+		sb.append("infor_api_disk_bytes_written_total ").append(work.getDiskBytesWritten()).append('\n');
+		out.write(sb.toString());
+	}
+
+	/*
+	 * 	Stream that counts the bytes read from it, and hands the count to recorder once, at end of stream or
+	 * 	when it is closed, whichever comes first
+	 */
+	static class MeteredInputStream extends FilterInputStream {
+		private final LongConsumer recorder;
+		private long bytesRead;
+		private boolean recorded;
+
+		MeteredInputStream(InputStream in, LongConsumer recorder) {
+			super(in);
+			this.recorder = recorder;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if(b != -1) {
+				this.bytesRead++;
+			} else {
+				record();
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if(n > 0) {
+				this.bytesRead += n;
+			} else if(n == -1) {
+				record();
+			}
+			return n;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				record();
+			}
+		}
+
+		private void record() {
+			if(! this.recorded) {
+				this.recorded = true;
+				this.recorder.accept(this.bytesRead);
+			}
+		}
+	}
+
+	private interface EndpointValue {
+		long of(EndpointMetrics metrics);
+	}
+
+	private static void appendCounter(StringBuilder sb, String name, String help, EndpointValue value) {
+		sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE ").append(name).append(" counter\n");
+		for(Map.Entry<Endpoint, EndpointMetrics> e : endpoints.entrySet()) {
+			sb.append(name).append("{endpoint=\"").append(e.getKey().label()).append("\"} ").append(value.of(e.getValue())).append('\n');
+		}
+	}
+
+	private static void appendGauge(StringBuilder sb, String name, String help, long value) {
+		sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE ").append(name).append(" gauge\n");
+		sb.append(name).append(' ').append(value).append('\n');
+	}
+
+	private static void appendHistogram(StringBuilder sb, String name, String labels, LatencyHistogram histogram) {
+		String prefix = labels == null ? "" : labels + ",";
+		String suffix = labels == null ? "" : "{" + labels + "}";
+		long[] cumulative = histogram.getCumulativeCounts();
+		for(int i = 0; i < cumulative.length; i++) {
+			String le = i < LatencyHistogram.BUCKET_BOUNDS_SECONDS.length ? Double.toString(LatencyHistogram.BUCKET_BOUNDS_SECONDS[i]) : "+Inf";
+			sb.append(name).append("_bucket{").append(prefix).append("le=\"").append(le).append("\"} ").append(cumulative[i]).append('\n');
+		}
+		sb.append(name).append("_sum").append(suffix).append(' ').append(histogram.getSumSeconds()).append('\n');
+		sb.append(name).append("_count").append(suffix).append(' ').append(cumulative[cumulative.length - 1]).append('\n');
+	}
+}
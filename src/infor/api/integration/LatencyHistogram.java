@@ -0,0 +1,93 @@
+package infor.api.integration;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * 	Fixed bucket latency histogram, safe to record into from any number of threads without locking
+ * 	Bucket bounds follow the Prometheus convention of cumulative "less than or equal" upper bounds in seconds
+ * 	Percentiles are estimated by interpolating within the bucket they fall in
+ */
+class LatencyHistogram {
+	static final double[] BUCKET_BOUNDS_SECONDS = { 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120, 300 };
+
+	private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_SECONDS.length + 1];
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sumNanos = new LongAdder();
+	private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+	LatencyHistogram() {
+		for(int i = 0; i < this.buckets.length; i++) {
+			this.buckets[i] = new LongAdder();
+		}
+	}
+
+	void record(long nanos) {
+		double seconds = nanos / 1e9;
+		int i = 0;
+		while(i < BUCKET_BOUNDS_SECONDS.length && seconds > BUCKET_BOUNDS_SECONDS[i]) {
+			i++;
+		}
+		this.buckets[i].increment();
+		this.count.increment();
+		this.sumNanos.add(nanos);
+		this.maxNanos.accumulate(nanos);
+	}
+
+	long getCount() {
+		return this.count.sum();
+	}
+
+	double getSumSeconds() {
+		return this.sumNanos.sum() / 1e9;
+	}
+
+	double getMeanMillis() {
+		long n = this.count.sum();
+		return n == 0 ? 0 : this.sumNanos.sum() / 1e6 / n;
+	}
+
+	double getMaxMillis() {
+		return this.maxNanos.get() / 1e6;
+	}
+
+	/*
+	 * 	@Return	Return the cumulative count of each bucket, the last being +Inf
+	 */
+	long[] getCumulativeCounts() {
+		long[] cumulative = new long[this.buckets.length];
+		long running = 0;
+		for(int i = 0; i < this.buckets.length; i++) {
+			running += this.buckets[i].sum();
+			cumulative[i] = running;
+		}
+		return cumulative;
+	}
+
+	/*
+	 * 	@Param	quantile	between 0 and 1
+	 * 	@Return	Return estimated latency at quantile in milliseconds, or 0 if nothing has been recorded
+	 */
+	double getPercentileMillis(double quantile) {
+		long[] cumulative = getCumulativeCounts();
+		long total = cumulative[cumulative.length - 1];
+		if(total == 0) {
+			return 0;
+		}
+		double rank = quantile * total;
+		for(int i = 0; i < cumulative.length; i++) {
+			if(cumulative[i] >= rank) {
+				double lower = i == 0 ? 0 : BUCKET_BOUNDS_SECONDS[i - 1];
+				if(i == BUCKET_BOUNDS_SECONDS.length) {
+					//Past the last bound - the best estimate is the largest value seen
+					return getMaxMillis();
+				}
+				double upper = BUCKET_BOUNDS_SECONDS[i];
+				long below = i == 0 ? 0 : cumulative[i - 1];
+				long inBucket = cumulative[i] - below;
+				double fraction = inBucket == 0 ? 1 : (rank - below) / inBucket;
+				return Math.min(getMaxMillis(), (lower + (upper - lower) * fraction) * 1000);
+			}
+		}
+		return getMaxMillis();
+	}
+}
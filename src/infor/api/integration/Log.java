@@ -0,0 +1,427 @@
+package infor.api.integration;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * 	Leveled logging for the tools and the request path, written by a background thread
+ *
+ * 	A call below the active level returns after one comparison - nothing is formatted, and a call with up to
+ * 	three arguments builds no array for them, so debug messages can stay in the hot path. A primitive
+ * 	argument is still boxed by the caller before that comparison, so a hot path that logs one below the
+ * 	usual level checks isEnabled first. Messages take {} placeholders which are filled in by the
+ * 	writer thread, not the caller; an argument must not be changed after it has been logged
+ * 	Messages go into a fixed size ring that any thread claims a slot in with a single compare-and-set,
+ * 	so a logging thread never waits on another or on the console. When the ring is full DEBUG and INFO
+ * 	messages are dropped and counted; WARN and ERROR wait for a free slot
+ *
+ * 	With a progress interval set, the writer also logs a one line summary of the work done so far from
+ * 	IntegrationMetrics, in place of a line per document
+ */
+public final class Log {
+	public enum Level { DEBUG, INFO, WARN, ERROR, OFF }
+
+	static final int RING_SIZE = 8192;
+	static final long IDLE_PARK_NANOS = 10_000_000L;
+	static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+	private static volatile Level level = Level.INFO;
+	private static volatile Writer fileWriter;
+	private static volatile long progressIntervalNanos;
+
+	private static final AtomicReferenceArray<Entry> ring = new AtomicReferenceArray<Entry>(RING_SIZE);
+	//Next sequence to claim; only ever moves forward by compare-and-set
+	private static final AtomicLong head = new AtomicLong();
+	//Next sequence the writer will take and the first it has not yet written - only the writer moves them
+	private static volatile long tail;
+	private static volatile long written;
+	private static final LongAdder dropped = new LongAdder();
+	private static final Thread writer;
+
+	private static final class Entry {
+		final long timeMillis;
+		final Level level;
+		final String thread;
+		final String template;
+		final Object[] args;
+		final Throwable thrown;
+
+		Entry(Level level, String template, Object[] args, Throwable thrown) {
+			this.timeMillis = System.currentTimeMillis();
+			this.level = level;
+			this.thread = Thread.currentThread().getName();
+			this.template = template;
+			this.args = args;
+			this.thrown = thrown;
+		}
+	}
+
+	static {
+		writer = new Thread(Log::drainForever, "integration-log-writer");
+		writer.setDaemon(true);
+		writer.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> flush(2000)));
+	}
+
+	private Log() {
+	}
+
+	/*
+	 * 	@Param	newLevel	lowest level written
+	 * 	@Param	file		file to append to, or null to write to the console - WARN and ERROR to stderr
+	 */
+	public static synchronized void configure(Level newLevel, String file) {
+		level = newLevel;
+		Writer previous = fileWriter;
+		if(previous != null) {
+			//Finish writing what was logged to the old file before switching
+			flush(1000);
+		}
+		if(file != null) {
+			try {
+				fileWriter = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+			} catch (IOException e) {
+				fileWriter = null;
+				System.err.println("Cannot open log file " + file + " - logging to the console: " + e.getMessage());
+			}
+		} else {
+			fileWriter = null;
+		}
+		if(previous != null) {
+			try {
+				previous.close();
+			} catch (IOException e) {
+				//Nothing left to write it to
+			}
+		}
+	}
+
+	/*
+	 * 	@Param	intervalSeconds		seconds between progress lines, 0 for none
+	 */
+	public static void setProgressInterval(int intervalSeconds) {
+		progressIntervalNanos = Math.max(0, intervalSeconds) * 1_000_000_000L;
+	}
+
+	/*
+	 * 	@Param	name	DEBUG, INFO, WARN, ERROR or OFF, any case
+	 * 	@Return	Return the level, or defaultVal if name is null or not a level
+	 */
+	public static Level parseLevel(String name, Level defaultVal) {
+		if(name == null) {
+			return defaultVal;
+		}
+		try {
+			return Level.valueOf(name.trim().toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			System.out.println("logLevel property must be one of DEBUG, INFO, WARN, ERROR or OFF");
+			return defaultVal;
+		}
+	}
+
+	public static Level getLevel() {
+		return level;
+	}
+
+	public static boolean isEnabled(Level atLevel) {
+		return atLevel.compareTo(level) >= 0 && atLevel != Level.OFF;
+	}
+
+	public static void debug(String message) {
+		if(Level.DEBUG.compareTo(level) >= 0) {
+			enqueue(new Entry(Level.DEBUG, message, null, null));
+		}
+	}
+
+	public static void debug(String template, Object arg) {
+		if(Level.DEBUG.compareTo(level) >= 0) {
+			enqueue(new Entry(Level.DEBUG, template, new Object[] { arg }, null));
+		}
+	}
+
+	public static void debug(String template, Object arg1, Object arg2) {
+		if(Level.DEBUG.compareTo(level) >= 0) {
+			enqueue(new Entry(Level.DEBUG, template, new Object[] { arg1, arg2 }, null));
+		}
+	}
+
+	public static void debug(String template, Object arg1, Object arg2, Object arg3) {
+		if(Level.DEBUG.compareTo(level) >= 0) {
+			enqueue(new Entry(Level.DEBUG, template, new Object[] { arg1, arg2, arg3 }, null));
+		}
+	}
+
+	public static void debug(String template, Object... args) {
+		if(Level.DEBUG.compareTo(level) >= 0) {
+			enqueue(new Entry(Level.DEBUG, template, args, null));
+		}
+	}
+
+	public static void info(String message) {
+		if(Level.INFO.compareTo(level) >= 0) {
+			enqueue(new Entry(Level.INFO, message, null, null));
+		}
+	}
+
+	public static void info(String template, Object arg) {
+		if(Level.INFO.compareTo(level) >= 0) {
+			enqueue(new Entry(Level.INFO, template, new Object[] { arg }, null));
+		}
+	}
+
+	public static void info(String template, Object arg1, Object arg2) {
+		if(Level.INFO.compareTo(level) >= 0) {
+			enqueue(new Entry(Level.INFO, template, new Object[] { arg1, arg2 }, null));
+		}
+	}
+
+	public static void info(String template, Object arg1, Object arg2, Object arg3) {
+		if(Level.INFO.compareTo(level) >= 0) {
+			enqueue(new Entry(Level.INFO, template, new Object[] { arg1, arg2, arg3 }, null));
+		}
+	}
+
+	public static void info(String template, Object... args) {
+		if(Level.INFO.compareTo(level) >= 0) {
+			enqueue(new Entry(Level.INFO, template, args, null));
+		}
+	}
+
+	public static void warn(String message) {
+		if(Level.WARN.compareTo(level) >= 0) {
+			enqueue(new Entry(Level.WARN, message, null, null));
+		}
+	}
+
+	public static void warn(String template, Object arg) {
+		if(Level.WARN.compareTo(level) >= 0) {
+			enqueue(new Entry(Level.WARN, template, new Object[] { arg }, null));
+		}
+	}
+
+	public static void warn(String template, Object arg1, Object arg2) {
+		if(Level.WARN.compareTo(level) >= 0) {
+			enqueue(new Entry(Level.WARN, template, new Object[] { arg1, arg2 }, null));
+		}
+	}
+
+	public static void warn(String template, Object arg1, Object arg2, Object arg3) {
+		if(Level.WARN.compareTo(level) >= 0) {
+			enqueue(new Entry(Level.WARN, template, new Object[] { arg1, arg2, arg3 }, null));
+		}
+	}
+
+	public static void warn(String template, Object... args) {
+		if(Level.WARN.compareTo(level) >= 0) {
+			enqueue(new Entry(Level.WARN, template, args, null));
+		}
+	}
+
+	public static void error(String message, Throwable thrown) {
+		if(Level.ERROR.compareTo(level) >= 0) {
+			enqueue(new Entry(Level.ERROR, message, null, thrown));
+		}
+	}
+
+	public static void error(String template, Object arg) {
+		if(Level.ERROR.compareTo(level) >= 0) {
+			enqueue(new Entry(Level.ERROR, template, new Object[] { arg }, null));
+		}
+	}
+
+	public static void error(String template, Object arg1, Object arg2) {
+		if(Level.ERROR.compareTo(level) >= 0) {
+			enqueue(new Entry(Level.ERROR, template, new Object[] { arg1, arg2 }, null));
+		}
+	}
+
+	public static void error(String template, Object arg1, Object arg2, Object arg3) {
+		if(Level.ERROR.compareTo(level) >= 0) {
+			enqueue(new Entry(Level.ERROR, template, new Object[] { arg1, arg2, arg3 }, null));
+		}
+	}
+
+	public static void error(String template, Object... args) {
+		if(Level.ERROR.compareTo(level) >= 0) {
+			enqueue(new Entry(Level.ERROR, template, args, null));
+		}
+	}
+
+	/*
+	 * 	Wait until every message logged before the call has been written
+	 *
+	 * 	@Param	timeoutMillis	longest to wait
+	 * 	@Return	Return true if everything was written in time
+	 */
+	public static boolean flush(long timeoutMillis) {
+		long target = head.get();
+		long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+		while(written < target) {
+			if(System.nanoTime() > deadline || Thread.currentThread() == writer) {
+				return false;
+			}
+			LockSupport.unpark(writer);
+			LockSupport.parkNanos(1_000_000L);
+		}
+		return true;
+	}
+
+	/*
+	 * 	@Return	Return number of DEBUG and INFO messages dropped because the ring was full
+	 */
+	public static long getDroppedCount() {
+		return dropped.sum();
+	}
+
+	private static void enqueue(Entry entry) {
+		long sequence;
+		while(true) {
+			sequence = head.get();
+			long used = sequence - tail;
+			if(used >= RING_SIZE) {
+				if(entry.level.compareTo(Level.WARN) < 0) {
+					dropped.increment();
+					return;
+				}
+				LockSupport.unpark(writer);
+				Thread.onSpinWait();
+			} else if(head.compareAndSet(sequence, sequence + 1)) {
+				if(used == RING_SIZE / 2) {
+					//Filling faster than the writer's idle poll - wake it rather than wait out the park
+					LockSupport.unpark(writer);
+				}
+				break;
+			}
+		}
+		//A claimed slot is always empty - the writer clears it before moving tail past it
+		ring.lazySet((int) (sequence & (RING_SIZE - 1)), entry);
+	}
+
+	private static void drainForever() {
+		StringBuilder out = new StringBuilder();
+		StringBuilder err = new StringBuilder();
+		long nextProgress = System.nanoTime();
+		long lastCompleted = 0;
+		long lastDropped = 0;
+		while(true) {
+			long sequence = tail;
+			long claimed = head.get();
+			//Take every published entry in sequence order, stopping at one claimed but not yet published
+			while(sequence < claimed) {
+				int index = (int) (sequence & (RING_SIZE - 1));
+				Entry entry = ring.get(index);
+				if(entry == null) {
+					break;
+				}
+				ring.lazySet(index, null);
+				sequence++;
+				tail = sequence;
+				format(entry, entry.level.compareTo(Level.WARN) >= 0 && fileWriter == null ? err : out);
+			}
+			long droppedNow = dropped.sum();
+			if(droppedNow != lastDropped) {
+				format(new Entry(Level.WARN, "{} log messages dropped - the log could not keep up", new Object[] { droppedNow - lastDropped }, null), err);
+				lastDropped = droppedNow;
+			}
+			long interval = progressIntervalNanos;
+			if(interval > 0 && isEnabled(Level.INFO) && System.nanoTime() - nextProgress >= 0) {
+				nextProgress = System.nanoTime() + interval;
+				long completed = IntegrationMetrics.getWorkMetrics().getWorkItemsCompleted();
+				if(completed != lastCompleted || IntegrationMetrics.getWorkMetrics().getWorkItemsRunning() > 0) {
+					format(new Entry(Level.INFO, progressLine(completed - lastCompleted, interval), null, null), out);
+					lastCompleted = completed;
+				}
+			}
+			if(out.length() > 0 || err.length() > 0) {
+				write(out, err);
+				written = sequence;
+			} else {
+				written = sequence;
+				LockSupport.parkNanos(IDLE_PARK_NANOS);
+			}
+		}
+	}
+
+	private static void write(StringBuilder out, StringBuilder err) {
+		Writer file = fileWriter;
+		try {
+			if(file != null) {
+				file.append(err).append(out).flush();
+			} else {
+				if(err.length() > 0) {
+					PrintStream stderr = System.err;
+					stderr.print(err);
+					stderr.flush();
+				}
+				if(out.length() > 0) {
+					PrintStream stdout = System.out;
+					stdout.print(out);
+					stdout.flush();
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Cannot write log - " + e.getMessage());
+		}
+		out.setLength(0);
+		err.setLength(0);
+	}
+
+	private static void format(Entry entry, StringBuilder sb) {
+		LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(entry.timeMillis), ZoneId.systemDefault());
+		TIMESTAMP_FORMAT.formatTo(time, sb);
+		sb.append(' ').append(entry.level.name());
+		for(int pad = entry.level.name().length(); pad < 5; pad++) {
+			sb.append(' ');
+		}
+		sb.append(" [").append(entry.thread).append("] ");
+		String template = entry.template;
+		Object[] args = entry.args;
+		int argIndex = 0;
+		int from = 0;
+		int at;
+		while(args != null && argIndex < args.length && (at = template.indexOf("{}", from)) >= 0) {
+			sb.append(template, from, at).append(args[argIndex++]);
+			from = at + 2;
+		}
+		sb.append(template, from, template.length()).append(System.lineSeparator());
+		if(entry.thrown != null) {
+			StringWriter trace = new StringWriter();
+			entry.thrown.printStackTrace(new PrintWriter(trace));
+			sb.append(trace);
+		}
+	}
+
+	/*
+	 * 	@Return	Return a one line summary of the work done since the last progress line
+	 */
+	private static String progressLine(long completedSinceLast, long intervalNanos) {
+		IntegrationMetrics.WorkMetricsMBean work = IntegrationMetrics.getWorkMetrics();
+		long requests = 0;
+		long errors = 0;
+		long retries = 0;
+		for(IntegrationMetrics.Endpoint endpoint : IntegrationMetrics.Endpoint.values()) {
+			IntegrationMetrics.EndpointMetricsMBean metrics = IntegrationMetrics.getEndpointMetrics(endpoint);
+			requests += metrics.getRequestCount();
+			errors += metrics.getErrorCount();
+			retries += metrics.getRetryCount();
+		}
+		return String.format("Progress - %d documents done (%.1f/s), %d running, %d queued, sessions %d/%d, %d requests, %d errors, %d retries",
+				work.getWorkItemsCompleted(), completedSinceLast / (intervalNanos / 1e9), work.getWorkItemsRunning(), work.getWorkItemsQueued(),
+				work.getSessionsInFlight(), work.getSessionLimit(), requests, errors, retries);
+	}
+}
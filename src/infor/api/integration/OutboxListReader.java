@@ -0,0 +1,209 @@
+package infor.api.integration;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import infor.api.resources.IntegrationQueryResult;
+import infor.api.resources.IntegrationQueryResultNode;
+import infor.api.resources.ResultInfo;
+
+/*
+ * 	Read an outbox/list response one result at a time as it arrives from the server
+ * 	Each <result> element is turned into an IntegrationQueryResultNode only when the caller asks for the
+ * 	next node, so neither the response document nor the full list of nodes is ever held in memory
+ * 
+ * 	With the JAXB fallback the whole response is unmarshalled into an IntegrationQueryResult up front
+ * 	and its nodes are handed out from that list instead
+ */
+public class OutboxListReader implements Iterator<IntegrationQueryResultNode>, Closeable {
+	private static final XMLInputFactory xmlInputFactory = newXmlInputFactory();
+	
+	private final InputStream in;
+	private XMLStreamReader xmlReader;
+	private Iterator<IntegrationQueryResultNode> unmarshalledNodes;
+	private ResultInfo resultInfo;
+	private IntegrationQueryResultNode nextNode;
+	private int nodesRead = 0;
+	private boolean finished = false;
+	
+	public OutboxListReader(InputStream in, boolean useJaxb) {
+		this.in = in;
+		if(useJaxb) {
+			IntegrationQueryResult queryResult = InforAPI.bindOutboxListXmlToObject(in);
+			this.unmarshalledNodes = queryResult != null ? queryResult.getResults().iterator() : null;
+			this.resultInfo = queryResult != null ? queryResult.getResultInfo() : null;
+			this.finished = queryResult == null;
+			return;
+		}
+		try {
+			this.xmlReader = xmlInputFactory.createXMLStreamReader(in, "UTF-8");
+		} catch (XMLStreamException e) {
+			Log.error("Cannot read outbox list response", e);
+			this.finished = true;
+		}
+	}
+	
+	@Override
+	public boolean hasNext() {
+		if(this.nextNode == null && ! this.finished) {
+			this.nextNode = readNextNode();
+			this.finished = this.nextNode == null;
+		}
+		return this.nextNode != null;
+	}
+	
+	@Override
+	public IntegrationQueryResultNode next() {
+		if(! hasNext()) {
+			throw new NoSuchElementException();
+		}
+		IntegrationQueryResultNode node = this.nextNode;
+		this.nextNode = null;
+		this.nodesRead++;
+		return node;
+	}
+	
+	/*
+	 * 	@Return	Return the response's resultInfo once it has been read, otherwise null
+	 * 			The server sends it ahead of the results, so it is available after the first call to hasNext
+	 */
+	public ResultInfo getResultInfo() {
+		return this.resultInfo;
+	}
+	
+	/*
+	 * 	@Return	Return number of nodes handed out so far
+	 */
+	public int getNodesRead() {
+		return this.nodesRead;
+	}
+	
+	/*
+	 * 	@Return	Return true once every result in the response has been read
+	 */
+	public boolean isFinished() {
+		return this.finished && this.nextNode == null;
+	}
+	
+	@Override
+	public void close() {
+		this.finished = true;
+		try {
+			if(this.xmlReader != null) {
+				this.xmlReader.close();
+			}
+			this.in.close();
+		} catch (XMLStreamException | IOException e) {
+			Log.warn("Cannot close outbox list response - {}", e);
+		}
+	}
+	
+	/*
+	 * 	Advance to the next <result> element, picking up <resultInfo> on the way
+	 * 
+	 * 	@Return	Return next node of the response or null at the end of the response
+	 */
+	private IntegrationQueryResultNode readNextNode() {
+		if(this.unmarshalledNodes != null) {
+			return this.unmarshalledNodes.hasNext() ? this.unmarshalledNodes.next() : null;
+		}
+		try {
+			while(this.xmlReader.hasNext()) {
+				if(this.xmlReader.next() != XMLStreamConstants.START_ELEMENT) {
+					continue;
+				}
+				String name = this.xmlReader.getLocalName();
+				if(name.equals("result")) {
+					return readResultNode();
+				} else if(name.equals("resultInfo")) {
+					this.resultInfo = readResultInfo();
+				}
+			}
+		} catch (XMLStreamException e) {
+			Log.error("Cannot read outbox list response", e);
+		}
+		return null;
+	}
+	
+	private IntegrationQueryResultNode readResultNode() throws XMLStreamException {
+		Integer messageUid = null;
+		String documentType = null;
+		String messagePriority = null;
+		Integer actionUid = null;
+		while(this.xmlReader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			String name = this.xmlReader.getLocalName();
+			String text = readElementText();
+			switch(name) {
+				case "messageUid":		messageUid = parseInteger(text); break;
+				case "documentType":	documentType = text; break;
+				case "messagePriority":	messagePriority = text; break;
+				case "actionUid":		actionUid = parseInteger(text); break;
+				default: break;
+			}
+		}
+		return new IntegrationQueryResultNode(messageUid, documentType, messagePriority, actionUid);
+	}
+	
+	private ResultInfo readResultInfo() throws XMLStreamException {
+		Integer count = null;
+		Integer offset = null;
+		Integer firstRowNumber = null;
+		Integer estimatedTotalCount = null;
+		boolean hasMore = false;
+		while(this.xmlReader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			String name = this.xmlReader.getLocalName();
+			String text = readElementText();
+			switch(name) {
+				case "count":				count = parseInteger(text); break;
+				case "offset":				offset = parseInteger(text); break;
+				case "firstRowNumber":		firstRowNumber = parseInteger(text); break;
+				case "estimatedTotalCount":	estimatedTotalCount = parseInteger(text); break;
+				case "hasMore":				hasMore = Boolean.parseBoolean(text.trim()); break;
+				default: break;
+			}
+		}
+		return new ResultInfo(count, offset, firstRowNumber, estimatedTotalCount, hasMore);
+	}
+	
+	/*
+	 * 	Read the text of the current element, skipping over any unexpected child elements
+	 */
+	private String readElementText() throws XMLStreamException {
+		StringBuilder text = new StringBuilder();
+		int depth = 1;
+		while(depth > 0) {
+			int event = this.xmlReader.next();
+			if(event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if(event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			} else if(depth == 1 && (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA)) {
+				text.append(this.xmlReader.getText());
+			}
+		}
+		return text.toString();
+	}
+	
+	private static Integer parseInteger(String text) {
+		try {
+			return Integer.valueOf(text.trim());
+		} catch(NumberFormatException e) {
+			return null;
+		}
+	}
+	
+	private static XMLInputFactory newXmlInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		return factory;
+	}
+}
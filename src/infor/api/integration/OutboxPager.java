@@ -0,0 +1,102 @@
+package infor.api.integration;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+
+import infor.api.resources.IntegrationQueryResultNode;
+import infor.api.resources.ResultInfo;
+
+/*
+ * 	Iterate over the Integration API outbox one page at a time using resultInfo's hasMore and offset
+ * 	Each page is read as a stream, so nodes are handed out as they are parsed. As soon as a page's
+ * 	resultInfo has been read the request for the following page is sent, so the next page is usually
+ * 	ready by the time the current page's documents have been handed to the fetch workers
+ * 
+ * 	Not thread safe - intended to be drained by a single scheduling thread
+ * 	When documents are deleted as they are fetched, later rows shift down between pages; any row
+ * 	skipped this way is still in the outbox and is picked up by the next poll
+ */
+public class OutboxPager implements Iterator<IntegrationQueryResultNode> {
+	private final InforAPIClient client;
+	private OutboxListReader currentPage;
+	private int currentPageOffset = 0;
+	private boolean followingPageRequested = false;
+	private CompletableFuture<OutboxListReader> nextPage;
+	private int nextPageOffset = 0;
+	
+	public OutboxPager() {
+		this(InforAPI.getDefaultClient());
+	}
+	
+	/*
+	 * 	@Param	client	client of the tenant whose outbox is paged through
+	 */
+	public OutboxPager(InforAPIClient client) {
+		this.client = client;
+		this.nextPage = client.openOutboxListAsync(this.nextPageOffset);
+	}
+	
+	@Override
+	public boolean hasNext() {
+		while(true) {
+			if(this.currentPage != null) {
+				boolean more = this.currentPage.hasNext();
+				prefetchPageAfterCurrent();
+				if(more) {
+					return true;
+				}
+				this.currentPage.close();
+				this.currentPage = null;
+			}
+			if(this.nextPage == null) {
+				return false;
+			}
+			this.currentPage = this.nextPage.join();
+			this.currentPageOffset = this.nextPageOffset;
+			this.followingPageRequested = false;
+			this.nextPage = null;
+			if(this.currentPage == null) {
+				//Poll failed - stop rather than retry the same offset forever
+				return false;
+			}
+		}
+	}
+	
+	@Override
+	public IntegrationQueryResultNode next() {
+		if(! hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return this.currentPage.next();
+	}
+	
+	/*
+	 * 	Once the current page's resultInfo is known, and the server has more results after it, send the
+	 * 	request for them. The page size comes from resultInfo's count, or from the nodes read once the
+	 * 	whole page has been read if the server did not send a count
+	 */
+	private void prefetchPageAfterCurrent() {
+		ResultInfo info = this.currentPage.getResultInfo();
+		if(this.followingPageRequested || info == null) {
+			return;
+		}
+		Integer pageSize = info.getCount();
+		if(pageSize == null) {
+			if(! this.currentPage.isFinished()) {
+				return;
+			}
+			pageSize = this.currentPage.getNodesRead();
+		}
+		this.followingPageRequested = true;
+		if(! info.hasMore() || pageSize == 0) {
+			return;
+		}
+		int pageOffset = info.getOffset() != null ? info.getOffset() : this.currentPageOffset;
+		int followingOffset = pageOffset + pageSize;
+		if(followingOffset <= this.currentPageOffset) {
+			return;
+		}
+		this.nextPageOffset = followingOffset;
+		this.nextPage = this.client.openOutboxListAsync(followingOffset);
+	}
+}
@@ -0,0 +1,115 @@
+package infor.api.integration;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.LongConsumer;
+
+/*
+ * 	Payload of a POST request - either an in-memory String or a file on disk
+ *
+ * 	A file payload is never loaded onto the heap. Each attempt makes two streaming passes over it: the
+ * 	HmacSigner reads it through a FileChannel to sign it, then the HttpClient streams it to the connection
+ * 	as a fixed-length body. Heap use is the same for a 50 MB document as for a 5 KB one
+ * 	The file is read as UTF-8, the encoding the server verifies the signature with
+ *
+ * 	A compressed body is still signed over the uncompressed payload - the server decodes the body before it
+ * 	verifies the signature. A compressed String is sent with a fixed length; a compressed file is
+ * 	compressed as it is sent, so its length is not known up front
+ */
+public final class RequestBody {
+	private final String text;
+	private final Path file;
+
+	private RequestBody(String text, Path file) {
+		this.text = text;
+		this.file = file;
+	}
+
+	public static RequestBody ofString(String text) {
+		return text != null ? new RequestBody(text, null) : null;
+	}
+
+	public static RequestBody ofFile(Path file) {
+		return new RequestBody(null, file);
+	}
+
+	/*
+	 * 	@Return	Return the HMAC signature of a POST carrying this payload
+	 */
+	String sign(HmacSigner signer, String uri, String method, String xDapiDate) throws IOException {
+		if(this.file != null) {
+			return signer.sign(uri, method, xDapiDate, this.file);
+		}
+		return signer.sign(uri, method, xDapiDate, this.text);
+	}
+
+	/*
+	 * 	@Param	contentEncoding		gzip or deflate to compress the payload, or null to send it as is
+	 * 	@Param	wireBytes			told the length of the body as sent - up front for a fixed-length body, once
+	 * 								the body has been read to the end for a file compressed as it is sent
+	 * 	@Return	Return a publisher that sends this payload
+	 */
+	BodyPublisher publisher(String contentEncoding, LongConsumer wireBytes) throws IOException {
+		if(contentEncoding == null) {
+			BodyPublisher publisher = this.file != null ? BodyPublishers.ofFile(this.file)
+					: BodyPublishers.ofString(this.text, StandardCharsets.UTF_8);
+			wireBytes.accept(publisher.contentLength());
+			return publisher;
+		}
+		if(this.file != null) {
+			//Fail now rather than part way through sending if the file cannot be opened
+			Files.newInputStream(this.file).close();
+			Path file = this.file;
+			return BodyPublishers.ofInputStream(() -> {
+				try {
+					return new IntegrationMetrics.MeteredInputStream(ContentEncoding.encoding(Files.newInputStream(file), contentEncoding), wireBytes);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		}
+		byte[] compressed = ContentEncoding.encode(this.text.getBytes(StandardCharsets.UTF_8), contentEncoding);
+		wireBytes.accept(compressed.length);
+		return BodyPublishers.ofByteArray(compressed);
+	}
+
+	/*
+	 * 	@Return	Return size in bytes of the payload before any compression - a String is counted as UTF-8
+	 */
+	long length() {
+		if(this.file != null) {
+			try {
+				return Files.size(this.file);
+			} catch (IOException e) {
+				return 0;
+			}
+		}
+		return utf8Length(this.text);
+	}
+
+	/*
+	 * 	@Return	Return number of bytes text encodes to as UTF-8, without encoding it
+	 */
+	private static long utf8Length(String text) {
+		long bytes = text.length();
+		for(int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if(c >= 0x800) {
+				//A surrogate pair is 4 bytes for 2 chars, any other char from here up is 3 bytes for 1
+				bytes += Character.isSurrogate(c) ? 1 : 2;
+			} else if(c >= 0x80) {
+				bytes++;
+			}
+		}
+		return bytes;
+	}
+
+	@Override
+	public String toString() {
+		return this.file != null ? this.file.toString() : "String payload of " + this.text.length() + " chars";
+	}
+}
@@ -0,0 +1,89 @@
+package infor.api.integration;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.http.HttpConnectTimeoutException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ * 	Decide whether a failed Infor API request is worth sending again, and how long to wait first
+ * 		Retryable		429 throttling, 5xx server errors, timeouts and connection failures
+ * 		Not retryable	anything else - 4xx errors will fail the same way every time
+ * 	A request that carries a payload (an upload) may already have been processed when it times out or
+ * 	gets a 500, so it is only retried when the platform is known not to have accepted it: 429, 503 or
+ * 	a failure to connect
+ * 
+ * 	Waits use full jitter - a random time up to baseDelay * 2^(attempt-1), capped at maxDelay - so
+ * 	workers that failed together do not all retry together. A Retry-After header, in seconds or as
+ * 	an HTTP date, is honoured as the minimum wait
+ */
+public class RetryPolicy {
+	static final long MAX_RETRY_AFTER_MILLIS = 5 * 60 * 1000;
+	
+	private final int maxAttempts;
+	private final long baseDelayMillis;
+	private final long maxDelayMillis;
+	
+	public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.baseDelayMillis = Math.max(1, baseDelayMillis);
+		this.maxDelayMillis = Math.max(this.baseDelayMillis, maxDelayMillis);
+	}
+	
+	public int getMaxAttempts() {
+		return this.maxAttempts;
+	}
+	
+	/*
+	 * 	@Param	statusCode	response code of the server's response
+	 * 	@Param	idempotent	false if repeating the request could create a duplicate
+	 */
+	public boolean isRetryable(int statusCode, boolean idempotent) {
+		if(statusCode == 429 || statusCode == 503) {
+			return true;
+		}
+		return idempotent && statusCode >= 500;
+	}
+	
+	/*
+	 * 	@Param	e			failure sending the request or reading its response
+	 * 	@Param	idempotent	false if repeating the request could create a duplicate
+	 */
+	public boolean isRetryable(Throwable e, boolean idempotent) {
+		if(e instanceof ConnectException || e instanceof HttpConnectTimeoutException) {
+			return true;
+		}
+		return idempotent && e instanceof IOException;
+	}
+	
+	/*
+	 * 	@Param	attempt		number of the attempt that just failed, starting at 1
+	 * 	@Param	retryAfter	value of the response's Retry-After header, or null
+	 * 	@Return	Return milliseconds to wait before the next attempt
+	 */
+	public long backoffMillis(int attempt, String retryAfter) {
+		long ceiling = this.baseDelayMillis << Math.min(attempt - 1, 20);
+		long jittered = ThreadLocalRandom.current().nextLong(Math.min(ceiling, this.maxDelayMillis) + 1);
+		return Math.max(jittered, parseRetryAfterMillis(retryAfter));
+	}
+	
+	static long parseRetryAfterMillis(String retryAfter) {
+		if(retryAfter == null) {
+			return 0;
+		}
+		long millis;
+		try {
+			millis = Long.parseLong(retryAfter.trim()) * 1000;
+		} catch(NumberFormatException e) {
+			try {
+				ZonedDateTime at = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+				millis = Duration.between(ZonedDateTime.now(), at).toMillis();
+			} catch(Exception e2) {
+				return 0;
+			}
+		}
+		return Math.min(MAX_RETRY_AFTER_MILLIS, Math.max(0, millis));
+	}
+}
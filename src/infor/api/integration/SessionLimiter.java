@@ -0,0 +1,125 @@
+package infor.api.integration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * 	Bound the number of HTTP sessions open against the Infor platform at any one time
+ * 	Work items may run on many more threads than there are sessions; each one holds a permit
+ * 	only for the duration of its request. Uses a lock rather than a monitor so that a waiting
+ * 	virtual thread does not pin its carrier thread
+ * 	Asynchronous callers queue a future instead of blocking; a released session is handed to them first
+ */
+public class SessionLimiter {
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition permitReleased = lock.newCondition();
+	private volatile int limit;
+	private volatile int inFlight = 0;
+	private final Queue<CompletableFuture<Void>> asyncWaiters = new ArrayDeque<CompletableFuture<Void>>();
+	
+	public SessionLimiter(int limit) {
+		this.limit = Math.max(1, limit);
+	}
+	
+	/*
+	 * 	Block until a session is free and take it
+	 */
+	public void acquire() throws InterruptedException {
+		lock.lock();
+		try {
+			while(this.inFlight >= this.limit) {
+				permitReleased.await();
+			}
+			this.inFlight++;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/*
+	 * 	Take a session without blocking the calling thread
+	 * 
+	 * 	@Return	Return a future completed once the caller holds a session; it must later call release
+	 */
+	public CompletableFuture<Void> acquireAsync() {
+		lock.lock();
+		try {
+			if(this.inFlight < this.limit) {
+				this.inFlight++;
+				return CompletableFuture.completedFuture(null);
+			}
+			CompletableFuture<Void> waiter = new CompletableFuture<Void>();
+			asyncWaiters.add(waiter);
+			return waiter;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/*
+	 * 	Return a session taken by acquire or acquireAsync
+	 */
+	public void release() {
+		List<CompletableFuture<Void>> admitted;
+		lock.lock();
+		try {
+			this.inFlight--;
+			admitted = admitWaiters();
+		} finally {
+			lock.unlock();
+		}
+		complete(admitted);
+	}
+	
+	/*
+	 * 	Change the number of sessions allowed at once
+	 * 	Raising the limit admits waiting callers straight away; lowering it lets sessions already in flight
+	 * 	finish and holds back new ones until in flight falls below the new limit
+	 */
+	public void setLimit(int newLimit) {
+		List<CompletableFuture<Void>> admitted;
+		lock.lock();
+		try {
+			this.limit = Math.max(1, newLimit);
+			admitted = admitWaiters();
+		} finally {
+			lock.unlock();
+		}
+		complete(admitted);
+	}
+	
+	/*
+	 * 	Hand free sessions to queued async callers first, then wake blocked callers for whatever is left
+	 * 	Must be called holding the lock
+	 * 
+	 * 	@Return	Return async waiters now holding a session; complete them outside the lock as it runs the caller's next stage
+	 */
+	private List<CompletableFuture<Void>> admitWaiters() {
+		List<CompletableFuture<Void>> admitted = new ArrayList<CompletableFuture<Void>>();
+		while(this.inFlight < this.limit && ! asyncWaiters.isEmpty()) {
+			this.inFlight++;
+			admitted.add(asyncWaiters.poll());
+		}
+		if(this.inFlight < this.limit) {
+			permitReleased.signalAll();
+		}
+		return admitted;
+	}
+	
+	private static void complete(List<CompletableFuture<Void>> admitted) {
+		for(CompletableFuture<Void> waiter : admitted) {
+			waiter.complete(null);
+		}
+	}
+	
+	public int getLimit() {
+		return this.limit;
+	}
+	public int getInFlight() {
+		return this.inFlight;
+	}
+}
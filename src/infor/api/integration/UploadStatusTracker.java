@@ -0,0 +1,181 @@
+package infor.api.integration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import infor.api.resources.IntegrationStatusResponse;
+
+/*
+ * 	Track the status of uploaded messages until each one is Completed or Failed
+ * 	Upload workers register a messageId and move straight on to their next upload; one scheduler thread
+ * 	polls the inbound status of every pending message. Each message is polled again after a delay that
+ * 	starts at initialIntervalMillis and grows by backoffMultiplier each time it is still in progress, up
+ * 	to maxIntervalMillis, so long running messages cost fewer requests. Status requests are sent
+ * 	asynchronously and share the same session limit as every other request
+ * 	A message is given up on - completed with its last, not final, status - when the server rejects its status
+ * 	request (an unknown messageId, say) or it is still not final maxTrackMillis after it was registered
+ * 	Polls run on the scheduler of the client's InforAPIClientPool, so trackers of many tenants share one thread
+ */
+public class UploadStatusTracker {
+	//Longest a message is polled for when no limit is given
+	public static final long DEFAULT_MAX_TRACK_MILLIS = 60L * 60 * 1000;
+	
+	private final long initialIntervalMillis;
+	private final long maxIntervalMillis;
+	private final double backoffMultiplier;
+	private final long maxTrackMillis;
+	private final InforAPIClient client;
+	private final ScheduledExecutorService scheduler;
+	private volatile boolean stopped = false;
+	private final Map<Integer, CompletableFuture<IntegrationStatusResponse>> pending = new ConcurrentHashMap<Integer, CompletableFuture<IntegrationStatusResponse>>();
+	private final CopyOnWriteArrayList<BiConsumer<Integer, IntegrationStatusResponse>> completionListeners = new CopyOnWriteArrayList<BiConsumer<Integer, IntegrationStatusResponse>>();
+	
+	public UploadStatusTracker(long initialIntervalMillis, long maxIntervalMillis, double backoffMultiplier) {
+		this(InforAPI.getDefaultClient(), initialIntervalMillis, maxIntervalMillis, backoffMultiplier);
+	}
+	
+	/*
+	 * 	Same as above, polling the status of messages uploaded through client
+	 */
+	public UploadStatusTracker(InforAPIClient client, long initialIntervalMillis, long maxIntervalMillis, double backoffMultiplier) {
+		this(client, initialIntervalMillis, maxIntervalMillis, backoffMultiplier, DEFAULT_MAX_TRACK_MILLIS);
+	}
+	
+	/*
+	 * 	Same as above
+	 * 
+	 * 	@Param	maxTrackMillis	Longest a message is polled for before it is completed with its last status
+	 */
+	public UploadStatusTracker(InforAPIClient client, long initialIntervalMillis, long maxIntervalMillis, double backoffMultiplier,
+			long maxTrackMillis) {
+		this.client = client;
+		this.maxTrackMillis = maxTrackMillis;
+		this.initialIntervalMillis = initialIntervalMillis;
+		this.maxIntervalMillis = Math.max(initialIntervalMillis, maxIntervalMillis);
+		this.backoffMultiplier = Math.max(1.0, backoffMultiplier);
+		this.scheduler = client.getPool().getScheduler();
+	}
+	
+	/*
+	 * 	Start tracking an uploaded message
+	 * 
+	 * 	@Param	messageId	messageId returned by the inbound upload
+	 * 	@Return	Return future completed with the message's final status, or its last status if it was given up on
+	 */
+	public CompletableFuture<IntegrationStatusResponse> register(Integer messageId) {
+		CompletableFuture<IntegrationStatusResponse> result = new CompletableFuture<IntegrationStatusResponse>();
+		CompletableFuture<IntegrationStatusResponse> existing = this.pending.putIfAbsent(messageId, result);
+		if(existing != null) {
+			return existing;
+		}
+		schedulePoll(messageId, this.initialIntervalMillis, System.currentTimeMillis() + this.maxTrackMillis);
+		return result;
+	}
+	
+	/*
+	 * 	Called with the messageId and final status of each message as it completes or fails
+	 */
+	public void addCompletionListener(BiConsumer<Integer, IntegrationStatusResponse> listener) {
+		this.completionListeners.add(listener);
+	}
+	
+	public int getPendingCount() {
+		return this.pending.size();
+	}
+	
+	/*
+	 * 	Block until every registered message has reached a final status or been given up on
+	 */
+	public void awaitAll() throws InterruptedException {
+		while(! this.pending.isEmpty()) {
+			try {
+				CompletableFuture.allOf(this.pending.values().toArray(new CompletableFuture<?>[0])).get();
+			} catch (ExecutionException e) {
+				// Listener failures are reported where they happen
+			}
+		}
+	}
+	
+	/*
+	 * 	Stop polling; messages still pending are no longer tracked
+	 * 	The shared scheduler keeps running for the pool's other clients
+	 */
+	public void shutdown() {
+		this.stopped = true;
+	}
+	
+	private void schedulePoll(Integer messageId, long delayMillis, long deadline) {
+		if(this.stopped) {
+			return;
+		}
+		this.scheduler.schedule(() -> poll(messageId, delayMillis, deadline), delayMillis, TimeUnit.MILLISECONDS);
+	}
+	
+	/*
+	 * 	Nothing thrown while polling may leave a message pending - it would never be polled again and awaitAll
+	 * 	would never return - so a message whose status cannot be handled is given up on
+	 */
+	private void poll(Integer messageId, long lastDelayMillis, long deadline) {
+		if(this.stopped) {
+			return;
+		}
+		try {
+			IntegrationAPIConnect.fetchDocumentStatusAsync(this.client, messageId).whenComplete((status, e) -> {
+				try {
+					onStatus(messageId, e == null ? status : null, lastDelayMillis, deadline);
+				} catch(RuntimeException failure) {
+					giveUp(messageId, status, failure);
+				}
+			});
+		} catch(RuntimeException failure) {
+			giveUp(messageId, null, failure);
+		}
+	}
+	
+	/*
+	 * 	@Param	status	status returned, or null if the request failed
+	 */
+	private void onStatus(Integer messageId, IntegrationStatusResponse status, long lastDelayMillis, long deadline) {
+		if(status != null && status.isFinalState()) {
+			complete(messageId, status);
+			return;
+		}
+		IntegrationStatusResponse last = status != null ? status : new IntegrationStatusResponse();
+		if(last.isRejected()) {
+			Log.warn("Status request for message {} rejected with response code {} - no longer tracking it", messageId, last.getResponseCode());
+			complete(messageId, last);
+			return;
+		}
+		long nextDelayMillis = Math.min(this.maxIntervalMillis, (long) (lastDelayMillis * this.backoffMultiplier));
+		if(System.currentTimeMillis() + nextDelayMillis > deadline) {
+			Log.warn("Message {} still {} after {} ms - no longer tracking it", messageId, last.getState(), this.maxTrackMillis);
+			complete(messageId, last);
+			return;
+		}
+		schedulePoll(messageId, nextDelayMillis, deadline);
+	}
+	
+	private void giveUp(Integer messageId, IntegrationStatusResponse status, RuntimeException failure) {
+		Log.error("Cannot poll status of message " + messageId + " - no longer tracking it", failure);
+		complete(messageId, status != null ? status : new IntegrationStatusResponse());
+	}
+	
+	private void complete(Integer messageId, IntegrationStatusResponse status) {
+		for(BiConsumer<Integer, IntegrationStatusResponse> listener : this.completionListeners) {
+			try {
+				listener.accept(messageId, status);
+			} catch(Exception e) {
+				Log.error("Upload completion listener failed for message " + messageId, e);
+			}
+		}
+		CompletableFuture<IntegrationStatusResponse> result = this.pending.remove(messageId);
+		if(result != null) {
+			result.complete(status);
+		}
+	}
+}
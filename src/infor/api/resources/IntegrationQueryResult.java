@@ -29,6 +29,10 @@ public class IntegrationQueryResult implements Serializable {
 		return -1;
 	}
 	
+	public ResultInfo getResultInfo() {
+		return this.resultInfo;
+	}
+	
 	public List<IntegrationQueryResultNode> getResults() {
 		return this.results;
 	}
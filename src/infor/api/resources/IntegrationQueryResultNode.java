@@ -22,6 +22,14 @@ public class IntegrationQueryResultNode implements Serializable {
 		super();
 	}
 	
+	public IntegrationQueryResultNode(Integer messageUid, String documentType, String messagePriority, Integer actionUid) {
+		super();
+		this.messageUid = messageUid;
+		this.documentType = documentType;
+		this.messagePriority = messagePriority;
+		this.actionUid = actionUid;
+	}
+	
 	public Integer getActionId() {
 		if( this.actionUid != null) {
 			return this.actionUid;
@@ -10,6 +10,8 @@ public class IntegrationStatusResponse {
 	private Integer messageId;
 	private String state = "-unknown-";
 	private String stateActionType;
+	//Response code of the status request - not part of the server's JSON
+	private transient int responseCode;
 	
 	public String getState() {
 		return this.state;
@@ -21,6 +23,28 @@ public class IntegrationStatusResponse {
 	public boolean isMessageCompleted() {
 		return this.state == COMPLETE_STATUS;
 	}
+	
+	/*
+	 * 	Message will not change state again once it has either Completed or Failed
+	 */
+	public boolean isFinalState() {
+		//state is null when the server sends "state": null
+		return COMPLETE_STATUS.equalsIgnoreCase(this.state) || FAILED_STATUS.equalsIgnoreCase(this.state);
+	}
+	/*
+	 * 	Server refused the status request itself (400 - 499, other than timeout and throttling), e.g. an unknown
+	 * 	messageId - asking again will not change the answer, so the message should no longer be polled
+	 */
+	public boolean isRejected() {
+		return this.responseCode >= 400 && this.responseCode < 500 && this.responseCode != 408 && this.responseCode != 429;
+	}
+	
+	public int getResponseCode() {
+		return this.responseCode;
+	}
+	public void setResponseCode(int responseCode) {
+		this.responseCode = responseCode;
+	}
 	@Override
 	public String toString() {
 		return "Message state is " + this.state + ", actionType is " + this.stateActionType;
@@ -18,12 +18,37 @@ public class ResultInfo implements Serializable{
 		super();
 	}
 	
+	public ResultInfo(Integer count, Integer offset, Integer firstRowNumber, Integer estimatedTotalCount, boolean hasMore) {
+		super();
+		this.count = count;
+		this.offset = offset;
+		this.firstRowNumber = firstRowNumber;
+		this.estimatedTotalCount = estimatedTotalCount;
+		this.hasMore = hasMore;
+	}
+	
 	public Integer getCount() {
 		return this.count;
 	}
 	
+	public Integer getOffset() {
+		return this.offset;
+	}
+	
+	public Integer getFirstRowNumber() {
+		return this.firstRowNumber;
+	}
+	
+	public Integer getEstimatedTotalCount() {
+		return this.estimatedTotalCount;
+	}
+	
+	public boolean hasMore() {
+		return this.hasMore;
+	}
+	
 	@Override
     public String toString() {
-        return "resultInfo [count=" + this.count + "]";
+        return "resultInfo [count=" + this.count + ", offset=" + this.offset + ", hasMore=" + this.hasMore + "]";
     }
 }
\ No newline at end of file